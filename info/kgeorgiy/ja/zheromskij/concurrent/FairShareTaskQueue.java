@@ -0,0 +1,94 @@
+package info.kgeorgiy.ja.zheromskij.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Separate FIFO queue for every submitting thread, served by weighted round-robin:
+ * a thread with weight {@code w} gets up to {@code w} tasks taken per turn.
+ * A small batch waits for at most one turn of every other active thread,
+ * however large their batches are.
+ */
+class FairShareTaskQueue implements TaskQueue {
+    private final Map<Thread, Caller> callers = new HashMap<>();
+    // Callers with queued tasks, the head one is being served
+    private final Queue<Caller> active = new ArrayDeque<>();
+    private final ThreadLocal<Integer> weights = ThreadLocal.withInitial(() -> 1);
+    private final Lock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    /**
+     * Sets the weight of the tasks that the current thread submits from now on.
+     * @param weight positive weight
+     */
+    void setWeight(final int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("Weight should be positive");
+        }
+        weights.set(weight);
+    }
+
+    @Override
+    public void add(final Runnable task) {
+        final Thread thread = Thread.currentThread();
+        final int weight = weights.get();
+        lock.lock();
+        try {
+            final Caller caller = callers.computeIfAbsent(thread, Caller::new);
+            caller.weight = weight;
+            if (caller.tasks.isEmpty()) {
+                caller.credit = weight;
+                active.add(caller);
+            }
+            caller.tasks.add(task);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(final int worker, final long timeout) throws InterruptedException {
+        lock.lock();
+        try {
+            long remaining = timeout;
+            while (active.isEmpty()) {
+                if (timeout == Long.MAX_VALUE) {
+                    notEmpty.await();
+                } else if (remaining <= 0) {
+                    return null;
+                } else {
+                    remaining = notEmpty.awaitNanos(remaining);
+                }
+            }
+            final Caller caller = active.element();
+            final Runnable task = caller.tasks.remove();
+            if (caller.tasks.isEmpty()) {
+                active.remove();
+                callers.remove(caller.thread);
+            } else if (--caller.credit == 0) {
+                caller.credit = caller.weight;
+                active.add(active.remove());
+            }
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class Caller {
+        private final Thread thread;
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+        private int weight;
+        private int credit;
+
+        Caller(final Thread thread) {
+            this.thread = thread;
+        }
+    }
+}
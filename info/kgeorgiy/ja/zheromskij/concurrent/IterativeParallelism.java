@@ -3,7 +3,17 @@ package info.kgeorgiy.ja.zheromskij.concurrent;
 import info.kgeorgiy.java.advanced.concurrent.ListIP;
 import info.kgeorgiy.java.advanced.mapper.ParallelMapper;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 import java.util.function.BinaryOperator;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -14,52 +24,188 @@ import java.util.stream.Stream;
 
 public class IterativeParallelism implements ListIP {
 
+    private static final int LEAVES_PER_THREAD = 8;
+    private static final int JOIN_BLOCK = 1 << 16;
+
     private ParallelMapper mapper;
+    private final ThreadFactory threadFactory;
+    private final Splitting splitting;
+    // Fork-join pools by parallelism, their idle workers terminate on their own
+    private final ConcurrentMap<Integer, ForkJoinPool> pools = new ConcurrentHashMap<>();
+
+    /**
+     * Way of dividing the list between the threads.
+     */
+    public enum Splitting {
+        /** Exactly {@code threads} equal slices, each processed by its own thread. */
+        FIXED,
+        /**
+         * Recursive splitting into small slices processed by a fork-join pool
+         * of {@code threads} workers, which balances slices of uneven cost.
+         */
+        FORK_JOIN
+    }
 
     public IterativeParallelism() {
-        this(null);
+        this(ThreadMode.PLATFORM);
     }
 
     public IterativeParallelism(ParallelMapper mapper) {
         this.mapper = mapper;
+        // A null mapper means starting own threads, as before
+        this.threadFactory = ThreadMode.PLATFORM.factory();
+        this.splitting = Splitting.FIXED;
+    }
+
+    /**
+     * Creates an instance that starts its own threads of the given kind on every call.
+     * @param threadMode kind of threads to use
+     */
+    public IterativeParallelism(final ThreadMode threadMode) {
+        this.mapper = null;
+        this.threadFactory = threadMode.factory();
+        this.splitting = Splitting.FIXED;
+    }
+
+    /**
+     * Creates an instance that splits the lists in the given way.
+     * {@link Splitting#FORK_JOIN} always runs in platform threads.
+     * @param splitting way of splitting
+     */
+    public IterativeParallelism(final Splitting splitting) {
+        this.mapper = null;
+        this.threadFactory = ThreadMode.PLATFORM.factory();
+        this.splitting = splitting;
     }
 
-    private static <T> List<Stream<? extends T>> splitList(final List<? extends T> vals, final int parts) {
-        final List<Stream<? extends T>> res = new ArrayList<>();
-        final int partSize = vals.size() / parts;
+    /**
+     * Computes the result for the slice {@code [from, to)} of the values.
+     */
+    @FunctionalInterface
+    interface SliceFunction<R> {
+        R apply(int from, int to);
+    }
+
+    private static List<int[]> splitRanges(final int size, final int parts) {
+        final List<int[]> res = new ArrayList<>();
+        if (size == 0) {
+            return res;
+        }
+        final int partSize = size / parts;
         // for (int i = 0; i < vals.size(); i += partSize) {
         //     // :NOTE: Не равномерное распределение
         //     res.add(vals.subList(i, Math.min(i + partSize, vals.size())).stream());
         // }
-        int rem = vals.size() % partSize;
+        int rem = size % partSize;
         int step = partSize + (rem > 0 ? 1 : 0);
-        for (int i = 0; i < vals.size(); i += step, rem--) {
+        for (int i = 0; i < size; i += step, rem--) {
             if (rem == 0) {
                 step = partSize;
             }
-            res.add(vals.subList(i, i + step).stream());
+            res.add(new int[]{i, i + step});
         }
-       
-        
         return res;
     }
 
-    
-    private <T, U, R> U parallelFun(final List<? extends T> values, final int threads, final Function<Stream<? extends T>, R> mapper, final Function<List<R>, U> combiner) throws InterruptedException {
+    private static void checkThreads(final int threads) {
         if (threads < 1) {
             throw new IllegalArgumentException("Not enough threads");
         }
+    }
+
+    /**
+     * Splits {@code [0, size)} into slices processed in parallel,
+     * returns the results of the slices in order.
+     */
+    <R> List<R> parallelSlices(final int size, final int threads, final SliceFunction<R> slice) throws InterruptedException {
+        checkThreads(threads);
+        if (splitting == Splitting.FORK_JOIN) {
+            return forkJoin(size, threads, (from, to) -> Collections.singletonList(slice.apply(from, to)), IterativeParallelism::concat);
+        }
 
         final List<Thread> workers = new ArrayList<>();
         // :NOTE: Не работает для пустых списков
         // теперь работает
-        List<Stream<? extends T>> split = splitList(values, Math.min(threads, values.size()));
-        List<R> results = this.mapper == null ? map(mapper, workers, split) : this.mapper.map(mapper, split);
-        return combiner.apply(results);
+        final List<int[]> split = splitRanges(size, Math.min(threads, size));
+        final Function<int[], R> mapper = range -> slice.apply(range[0], range[1]);
+        return this.mapper == null ? map(mapper, workers, split) : this.mapper.map(mapper, split);
     }
 
-   
-    private <T, R> List<R> map(final Function<Stream<? extends T>, R> mapper, final List<Thread> workers, final List<Stream<? extends T>> split) throws InterruptedException {
+    /**
+     * Splits {@code [0, size)} into slices processed in parallel,
+     * reduces the results of the slices in order.
+     */
+    <R> Optional<R> parallelReduction(final int size, final int threads, final SliceFunction<R> slice, final BinaryOperator<R> reducer) throws InterruptedException {
+        checkThreads(threads);
+        if (splitting == Splitting.FORK_JOIN) {
+            return Optional.ofNullable(forkJoin(size, threads, slice, reducer));
+        }
+        return parallelSlices(size, threads, slice).stream().reduce(reducer);
+    }
+
+    private <R> R forkJoin(final int size, final int threads, final SliceFunction<R> slice, final BinaryOperator<R> merger) throws InterruptedException {
+        final int leaf = Math.max(1, size / (threads * LEAVES_PER_THREAD));
+        final ForkJoinTask<R> task = pools.computeIfAbsent(threads, ForkJoinPool::new)
+                .submit(new SliceTask<>(0, size, leaf, slice, merger));
+        try {
+            return task.get();
+        } catch (final InterruptedException e) {
+            task.cancel(true);
+            throw e;
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static <R> List<R> concat(final List<R> left, final List<R> right) {
+        final List<R> result = new ArrayList<>(left.size() + right.size());
+        result.addAll(left);
+        result.addAll(right);
+        return result;
+    }
+
+    /**
+     * Halves the slice until it is at most {@code leaf} elements long
+     * and merges the results of the halves, so merging runs in parallel too.
+     */
+    // Never serialized: the fields hold lambdas, and tasks live only inside a pool
+    @SuppressWarnings("serial")
+    private static class SliceTask<R> extends RecursiveTask<R> {
+        private final int from;
+        private final int to;
+        private final int leaf;
+        private final SliceFunction<R> slice;
+        private final BinaryOperator<R> merger;
+
+        SliceTask(final int from, final int to, final int leaf, final SliceFunction<R> slice, final BinaryOperator<R> merger) {
+            this.from = from;
+            this.to = to;
+            this.leaf = leaf;
+            this.slice = slice;
+            this.merger = merger;
+        }
+
+        @Override
+        protected R compute() {
+            if (to - from <= leaf) {
+                return slice.apply(from, to);
+            }
+            final int mid = (from + to) >>> 1;
+            // Head of the list goes first, so that short-circuiting operations see early matches early
+            final SliceTask<R> right = new SliceTask<>(mid, to, leaf, slice, merger);
+            right.fork();
+            final R left = new SliceTask<>(from, mid, leaf, slice, merger).compute();
+            return merger.apply(left, right.join());
+        }
+    }
+
+    private <T, R> List<R> map(final Function<T, R> mapper, final List<Thread> workers, final List<T> split) throws InterruptedException {
         final List<R> results = new ArrayList<>(Collections.nCopies(split.size(), null));
         // IntStream.range(0, split.size()).forEach(i -> {
         //     final Thread worker = new Thread(() -> results.set(i, mapper.apply(split.get(i))));
@@ -70,7 +216,7 @@ public class IterativeParallelism implements ListIP {
 
         workers.addAll(
             IntStream.range(0, split.size())
-                .mapToObj(i -> new Thread(() -> results.set(i, mapper.apply(split.get(i)))))
+                .mapToObj(i -> threadFactory.newThread(() -> results.set(i, mapper.apply(split.get(i)))))
                 .peek(Thread::start)
                 .toList()
         );
@@ -98,14 +244,18 @@ public class IterativeParallelism implements ListIP {
         return results;
     }
 
-
+    private static <T, R> SliceFunction<R> streamSlice(final List<? extends T> values, final Function<Stream<? extends T>, R> mapper) {
+        return (from, to) -> mapper.apply(values.subList(from, to).stream());
+    }
 
     private <T, U> Optional<U> parallelReduction(final List<? extends T> values, final int threads, final Function<Stream<? extends T>, U> mapper, final BinaryOperator<U> reducer) throws InterruptedException {
-        return parallelFun(values, threads, mapper, list -> list.stream().reduce(reducer));
+        return parallelReduction(values.size(), threads, streamSlice(values, mapper), reducer);
     }
 
-    private <T, U> List<U> combFun(final int threads, final List<? extends T> values, final Function<Stream<? extends T>, Stream<? extends U>> mapper) throws InterruptedException {
-        return parallelReduction(values, threads, mapper, Stream::concat).orElse(Stream.of()).collect(Collectors.toList());
+    /**
+     * Elements of a slice kept by {@link #filter}: the buffer is as long as the slice, only {@code size} are used.
+     */
+    private record Kept(Object[] buffer, int size) {
     }
 
     
@@ -149,7 +299,8 @@ public class IterativeParallelism implements ListIP {
    
     
     /** 
-     * Returns whether any elements of the provided {@List} match the provided {@code Predicate}. If the list is empty then returns {@code false} and the predicate is not evaluated 
+     * Returns whether any elements of the provided {@List} match the provided {@code Predicate}. If the list is empty then returns {@code false} and the predicate is not evaluated.
+     * Once a match is found, the other threads stop evaluating the predicate.
      * @param threads maximum number of threads to use for evaluation
      * @param values list of values
      * @param predicate a non-interfering, stateless predicate to apply to elements of the provided list
@@ -158,12 +309,21 @@ public class IterativeParallelism implements ListIP {
      */
     @Override
     public <T> boolean any(final int threads, final List<? extends T> values, final Predicate<? super T> predicate) throws InterruptedException {
-        return parallelReduction(values, threads, stream -> stream.anyMatch(predicate), Boolean::logicalOr).orElse(false);
+        // Set by the first slice to find a match, the others stop before their next element
+        final AtomicBoolean found = new AtomicBoolean();
+        return parallelReduction(values, threads, stream -> {
+            if (stream.takeWhile(value -> !found.get()).anyMatch(predicate)) {
+                found.set(true);
+                return true;
+            }
+            return false;
+        }, Boolean::logicalOr).orElse(false);
     }
 
     
     /** 
-     * Returns whether all elements of the provided {@List} match the provided {@code Predicate}. If the list is empty then returns {@code false} and the predicate is not evaluated 
+     * Returns whether all elements of the provided {@List} match the provided {@code Predicate}. If the list is empty then returns {@code false} and the predicate is not evaluated.
+     * Once a mismatch is found, the other threads stop evaluating the predicate.
      * @param threads maximum number of threads to use for evaluation
      * @param values list of values
      * @param predicate a non-interfering, stateless predicate to apply to elements of the provided list
@@ -181,12 +341,30 @@ public class IterativeParallelism implements ListIP {
      * @param threads maximum number of threads to use for evaluation
      * @param values list of values
      * @param predicate a non-interfering, stateless predicate to apply to each element to determine if it should be included
-     * @return a new ArrayList with the corresponding elements 
+     * @return a new ArrayList with the corresponding elements
      * @throws InterruptedException if the execution of any thread was interrupted
      */
     public <T> List<T> filter(final int threads, final List<? extends T> values, final Predicate<? super T> predicate) throws InterruptedException {
         // :NOTE: Похоже на map
-        return combFun(threads, values, stream -> stream.filter(predicate));
+        final List<Kept> slices = parallelSlices(values.size(), threads, (from, to) -> {
+            final Object[] buffer = new Object[to - from];
+            int size = 0;
+            for (final T value : values.subList(from, to)) {
+                if (predicate.test(value)) {
+                    buffer[size++] = value;
+                }
+            }
+            return new Kept(buffer, size);
+        });
+        final List<T> result = new ArrayList<>(slices.stream().mapToInt(Kept::size).sum());
+        for (final Kept slice : slices) {
+            for (int i = 0; i < slice.size(); i++) {
+                @SuppressWarnings("unchecked")
+                final T value = (T) slice.buffer()[i];
+                result.add(value);
+            }
+        }
+        return result;
     }
 
 
@@ -196,11 +374,19 @@ public class IterativeParallelism implements ListIP {
      * @param threads maximum number of threads to use for evaluation
      * @param values list of values
      * @param f a a non-interfering, stateless function to apply to each element
-     * @return a new ArrayList with the corresponding elements 
+     * @return a new ArrayList with the corresponding elements
      * @throws InterruptedException if the execution of any thread was interrupted
      */
     public <T, U> List<U> map(final int threads, final List<? extends T> values, final Function<? super T, ? extends U> f) throws InterruptedException {
-        return combFun(threads, values, stream -> stream.map(f));
+        final List<U> result = new ArrayList<>(Collections.nCopies(values.size(), null));
+        parallelSlices(values.size(), threads, (from, to) -> {
+            final ListIterator<? extends T> it = values.listIterator(from);
+            for (int i = from; i < to; i++) {
+                result.set(i, f.apply(it.next()));
+            }
+            return null;
+        });
+        return result;
     }
 
     
@@ -214,10 +400,114 @@ public class IterativeParallelism implements ListIP {
      * @throws InterruptedException if the execution of any thread was interrupted
      */
     public String join(final int threads, final List<?> values) throws InterruptedException {
-        return parallelFun(values, 
-                threads, 
-                stream -> stream.map(Object::toString).collect(Collectors.joining()), 
-                list -> list.stream().collect(Collectors.joining()));
+        final String[] strings = new String[values.size()];
+        final List<Measured> measured = parallelSlices(values.size(), threads, (from, to) -> {
+            final ListIterator<?> it = values.listIterator(from);
+            long length = 0;
+            for (int i = from; i < to; i++) {
+                strings[i] = it.next().toString();
+                length += strings[i].length();
+            }
+            return new Measured(from, to, length);
+        });
+
+        final long[] offsets = new long[measured.size() + 1];
+        for (int i = 0; i < measured.size(); i++) {
+            offsets[i + 1] = offsets[i] + measured.get(i).length();
+        }
+        if (offsets[measured.size()] > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Joined string is too long, use join to an Appendable instead");
+        }
+
+        final char[] chars = new char[(int) offsets[measured.size()]];
+        parallelSlices(measured.size(), threads, (from, to) -> {
+            for (int slice = from; slice < to; slice++) {
+                int offset = (int) offsets[slice];
+                for (int i = measured.get(slice).from(); i < measured.get(slice).to(); i++) {
+                    strings[i].getChars(0, strings[i].length(), chars, offset);
+                    offset += strings[i].length();
+                }
+            }
+            return null;
+        });
+        return new String(chars);
+    }
+
+    /**
+     * Slice {@code [from, to)} of {@link #join} and the total length of its strings.
+     */
+    private record Measured(int from, int to, long length) {
+    }
+
+    /**
+     * Writes string representations of all elements of the provided list to the output, in the order of the list.
+     * Representations are computed in parallel by blocks of {@value #JOIN_BLOCK} elements, so only one block is kept in memory.
+     * @param threads maximum number of threads to use for evaluation
+     * @param values list of values
+     * @param out output to append the representations to
+     * @throws InterruptedException if the execution of any thread was interrupted
+     * @throws IOException if an I/O error occurs while writing to the output
+     */
+    public void join(final int threads, final List<?> values, final Appendable out) throws InterruptedException, IOException {
+        final String[] strings = new String[Math.min(JOIN_BLOCK, values.size())];
+        for (int start = 0; start < values.size(); start += JOIN_BLOCK) {
+            final int offset = start;
+            final int size = Math.min(JOIN_BLOCK, values.size() - start);
+            parallelSlices(size, threads, (from, to) -> {
+                final ListIterator<?> it = values.listIterator(offset + from);
+                for (int i = from; i < to; i++) {
+                    strings[i] = it.next().toString();
+                }
+                return null;
+            });
+            for (int i = 0; i < size; i++) {
+                out.append(strings[i]);
+            }
+        }
+    }
+
+    /**
+     * Runs several collectors over the provided list in a single parallel pass,
+     * so the list is traversed and the threads are started only once.
+     * For example, {@code fuse(threads, values, List.of(Collectors.maxBy(cmp), Collectors.minBy(cmp), Collectors.filtering(p, Collectors.toList())))}
+     * returns the maximum, the minimum and the filtered list at once.
+     * The collectors see the elements of each slice in order and their partial results are combined in order,
+     * so ordered collectors such as {@link Collectors#toList()} preserve the order of the list.
+     * @param threads maximum number of threads to use for evaluation
+     * @param values list of values
+     * @param collectors non-interfering collectors to run
+     * @return results of the collectors, in the order of the collectors
+     * @throws InterruptedException if the execution of any thread was interrupted
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<Object> fuse(final int threads, final List<? extends T> values, final List<? extends Collector<? super T, ?, ?>> collectors) throws InterruptedException {
+        final List<Collector<T, Object, Object>> fused = collectors.stream()
+                .map(collector -> (Collector<T, Object, Object>) collector)
+                .toList();
+        final Object[] containers = parallelReduction(values.size(), threads, (from, to) -> {
+            final Object[] slice = new Object[fused.size()];
+            final List<BiConsumer<Object, T>> accumulators = new ArrayList<>(fused.size());
+            for (int j = 0; j < fused.size(); j++) {
+                slice[j] = fused.get(j).supplier().get();
+                accumulators.add(fused.get(j).accumulator());
+            }
+            for (final T value : values.subList(from, to)) {
+                for (int j = 0; j < slice.length; j++) {
+                    accumulators.get(j).accept(slice[j], value);
+                }
+            }
+            return slice;
+        }, (left, right) -> {
+            for (int j = 0; j < left.length; j++) {
+                left[j] = fused.get(j).combiner().apply(left[j], right[j]);
+            }
+            return left;
+        }).orElseGet(() -> fused.stream().map(collector -> collector.supplier().get()).toArray());
+
+        final List<Object> results = new ArrayList<>(fused.size());
+        for (int j = 0; j < fused.size(); j++) {
+            results.add(fused.get(j).finisher().apply(containers[j]));
+        }
+        return results;
     }
-        
-}
\ No newline at end of file
+}
@@ -3,122 +3,404 @@ package info.kgeorgiy.ja.zheromskij.concurrent;
 import info.kgeorgiy.java.advanced.mapper.ParallelMapper;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
+import java.util.function.ObjIntConsumer;
 
 public class ParallelMapperImpl implements ParallelMapper {
-    private final List<Thread> workers;
-    // :NOTE: LinkedList
-    // private final LinkedList<Runnable> tasks = new LinkedList<>();
-    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    // Worker slots, a retired worker leaves its slot empty
+    private final Thread[] workers;
+    private final int minWorkers;
+    // Whether the pool may grow, the growth bookkeeping is skipped otherwise
+    private final boolean elastic;
+    private final long keepAliveNanos;
+    private final ThreadFactory factory;
+    private final TaskQueue tasks;
+    private final ParallelMapperMetrics metrics;
+    private volatile int liveWorkers;
+    private boolean closed;
+    private final AtomicInteger idleWorkers = new AtomicInteger();
+    // Time the last task was taken by a worker
+    private volatile long lastStart = System.nanoTime();
+    private static final int CHUNKS_PER_WORKER = 4;
+    private static final long TARGET_CHUNK_NANOS = 100_000;
+    private static final long GROW_WAIT_NANOS = 10 * TARGET_CHUNK_NANOS;
+    private static final double COST_SMOOTHING = 0.25;
+    // Exponential moving average of the time spent on a single element, non-positive if unknown yet
+    private volatile double elementNanos;
+
+    /**
+     * Strategy of distributing tasks between the workers.
+     */
+    public enum Scheduling {
+        /** Single FIFO queue shared by all workers. */
+        SHARED,
+        /** Per-worker deques, idle workers steal tasks from the tails of the others. */
+        WORK_STEALING,
+        /**
+         * Separate queue for every calling thread, served in weighted round-robin,
+         * so that small batches aren't stuck behind large ones.
+         * @see #setWeight(int)
+         */
+        FAIR_SHARE
+    }
 
     public ParallelMapperImpl(final int threads) {
-        final Runnable workload = () -> {
-            try {
-                while (!Thread.interrupted()) {
-                    getTask().run();
-                }
-            } catch (final InterruptedException ignored) {
+        this(threads, Scheduling.SHARED);
+    }
 
-            } finally {
-                Thread.currentThread().interrupt();
-            }
+    public ParallelMapperImpl(final int threads, final Scheduling scheduling) {
+        this(threads, scheduling, ThreadMode.PLATFORM);
+    }
+
+    public ParallelMapperImpl(final int threads, final Scheduling scheduling, final ThreadMode threadMode) {
+        this(threads, threads, Long.MAX_VALUE, TimeUnit.NANOSECONDS, scheduling, threadMode);
+    }
+
+    /**
+     * Creates an elastic mapper. It starts with {@code minThreads} workers and adds more, up to {@code maxThreads},
+     * while tasks wait in the queue with no idle workers. Workers above {@code minThreads}
+     * that stay idle for {@code keepAlive} are stopped.
+     * @param minThreads number of workers kept at all times, at least {@code 1}
+     * @param maxThreads maximum number of workers
+     * @param keepAlive time an extra worker may stay idle before being stopped
+     * @param unit time unit of {@code keepAlive}
+     * @param scheduling strategy of distributing tasks between the workers
+     * @param threadMode kind of threads to run the workers in
+     */
+    public ParallelMapperImpl(
+            final int minThreads,
+            final int maxThreads,
+            final long keepAlive,
+            final TimeUnit unit,
+            final Scheduling scheduling,
+            final ThreadMode threadMode
+    ) {
+        if (minThreads < 1 || maxThreads < minThreads) {
+            throw new IllegalArgumentException("Expected 1 <= minThreads <= maxThreads");
+        }
+        factory = threadMode.factory();
+        minWorkers = minThreads;
+        elastic = maxThreads > minThreads;
+        keepAliveNanos = unit.toNanos(keepAlive);
+        metrics = new ParallelMapperMetrics(maxThreads);
+        tasks = switch (scheduling) {
+            case SHARED -> new SharedTaskQueue();
+            case WORK_STEALING -> new WorkStealingTaskQueue(maxThreads);
+            case FAIR_SHARE -> new FairShareTaskQueue();
         };
 
-        // :NOTE: .peek
-        // workers = Stream.generate(() -> new Thread(workload)).limit(threads).toList();
-        // workers.forEach(Thread::start);
-        workers = Stream.generate(() -> new Thread(workload))
-                .limit(threads)
-                .peek(Thread::start)
-                .toList();
+        workers = new Thread[maxThreads];
+        synchronized (workers) {
+            for (int i = 0; i < minThreads; i++) {
+                startWorker(i);
+            }
+        }
+    }
+
+    private void startWorker(final int index) {
+        workers[index] = factory.newThread(() -> work(index));
+        liveWorkers++;
+        metrics.workerStarted();
+        workers[index].start();
+    }
+
+    private void work(final int index) {
+        try {
+            while (!Thread.interrupted()) {
+                final long idleStart = System.nanoTime();
+                if (elastic) {
+                    idleWorkers.incrementAndGet();
+                }
+                final Runnable task;
+                try {
+                    task = tasks.poll(index, liveWorkers > minWorkers ? keepAliveNanos : Long.MAX_VALUE);
+                } finally {
+                    if (elastic) {
+                        idleWorkers.decrementAndGet();
+                    }
+                }
+                metrics.idle(index, System.nanoTime() - idleStart);
+                if (task != null) {
+                    task.run();
+                } else if (retire(index)) {
+                    return;
+                }
+            }
+        } catch (final InterruptedException ignored) {
+
+        } finally {
+            Thread.currentThread().interrupt();
+        }
     }
 
-    private Runnable getTask() throws InterruptedException {
-        synchronized (tasks) {
-            while (tasks.isEmpty()) {
-                tasks.wait();
+    private boolean retire(final int index) {
+        synchronized (workers) {
+            if (liveWorkers <= minWorkers) {
+                return false;
+            }
+            workers[index] = null;
+            liveWorkers--;
+            metrics.workerRetired();
+            return true;
+        }
+    }
+
+    /**
+     * Adds a worker if there is a free slot and nobody is waiting for tasks.
+     */
+    private void grow() {
+        if (idleWorkers.get() > 0 || liveWorkers == workers.length) {
+            return;
+        }
+        synchronized (workers) {
+            if (closed || liveWorkers == workers.length) {
+                return;
+            }
+            for (int i = 0; i < workers.length; i++) {
+                if (workers[i] == null) {
+                    startWorker(i);
+                    return;
+                }
             }
-            return tasks.poll();
         }
     }
 
     @Override
     public <T, R> List<R> map(final Function<? super T, ? extends R> f, final List<? extends T> args) throws InterruptedException {
+        return await(mapAsync(f, args));
+    }
+
+    private static <R> R await(final CompletableFuture<R> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            // Remaining chunks are skipped once the future is done
+            future.cancel(false);
+            throw e;
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Maps the function over the elements of the source, passing the results to the sink
+     * in the order of the source as soon as all the preceding ones are ready.
+     * At most {@code window} elements are read ahead of the sink, so the memory used
+     * doesn't depend on the size of the source.
+     * @param f function to apply
+     * @param source source of the arguments, consumed by the calling thread
+     * @param window maximum number of elements being processed at once
+     * @param sink consumer of the results, called by the calling thread
+     * @throws InterruptedException if the calling thread was interrupted while waiting for the results
+     */
+    public <T, R> void mapStreaming(
+            final Function<? super T, ? extends R> f,
+            final Iterator<? extends T> source,
+            final int window,
+            final Consumer<? super R> sink
+    ) throws InterruptedException {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window should be positive");
+        }
+        final int batch = chunkSize(window);
+        final Queue<CompletableFuture<List<R>>> inFlight = new ArrayDeque<>();
+        int pending = 0;
+        try {
+            while (true) {
+                while (pending < window && source.hasNext()) {
+                    final List<T> args = new ArrayList<>(Math.min(batch, window - pending));
+                    while (args.size() < batch && pending + args.size() < window && source.hasNext()) {
+                        args.add(source.next());
+                    }
+                    inFlight.add(submit(f, args, (result, index) -> {}, args.size()));
+                    pending += args.size();
+                }
+                if (inFlight.isEmpty()) {
+                    return;
+                }
+                final List<R> results = await(inFlight.remove());
+                results.forEach(sink);
+                pending -= results.size();
+            }
+        } finally {
+            inFlight.forEach(future -> future.cancel(false));
+        }
+    }
+
+    /**
+     * Same as {@link #mapStreaming(Function, Iterator, int, Consumer)} for a {@link Spliterator} source.
+     */
+    public <T, R> void mapStreaming(
+            final Function<? super T, ? extends R> f,
+            final Spliterator<? extends T> source,
+            final int window,
+            final Consumer<? super R> sink
+    ) throws InterruptedException {
+        mapStreaming(f, Spliterators.iterator(source), window, sink);
+    }
+
+    /**
+     * Asynchronously maps the function over the list using the workers of this mapper.
+     * @param f function to apply
+     * @param args list of arguments
+     * @return a future completed with the list of results in the order of the arguments,
+     * or exceptionally with the first exception thrown by {@code f} and the others suppressed
+     */
+    public <T, R> CompletableFuture<List<R>> mapAsync(final Function<? super T, ? extends R> f, final List<? extends T> args) {
+        return mapAsync(f, args, (result, index) -> {});
+    }
+
+    /**
+     * Asynchronously maps the function over the list using the workers of this mapper,
+     * reporting every result as soon as it is computed.
+     * Cancelling the returned future skips the elements that were not processed yet.
+     * @param f function to apply
+     * @param args list of arguments
+     * @param onResult called by the worker with every result and the index of its argument
+     * @return a future completed with the list of results in the order of the arguments,
+     * or exceptionally with the first exception thrown by {@code f} or {@code onResult} and the others suppressed
+     */
+    public <T, R> CompletableFuture<List<R>> mapAsync(
+            final Function<? super T, ? extends R> f,
+            final List<? extends T> args,
+            final ObjIntConsumer<? super R> onResult
+    ) {
+        return submit(f, args, onResult, chunkSize(args.size()));
+    }
+
+    private <T, R> CompletableFuture<List<R>> submit(
+            final Function<? super T, ? extends R> f,
+            final List<? extends T> args,
+            final ObjIntConsumer<? super R> onResult,
+            final int chunk
+    ) {
+        // Every slot is written by exactly one task, the countdown publishes them to the completing one
         final List<R> results = new ArrayList<>(Collections.nCopies(args.size(), null));
-        final Counter cnt = new Counter(args.size());
-        // final RuntimeException rt = new RuntimeException("RT thrown");
-        final List<RuntimeException> es = new ArrayList<>();
-        IntStream.range(0, args.size()).forEach(index -> {
-            synchronized (tasks) {
-                tasks.add(() -> {
-                    final T arg = args.get(index);
-                    R mapped = null;
-                    try {
-                        mapped = f.apply(arg);
-                        // :NOTE: Пробрасывать исходное
-                    } catch (final RuntimeException e) {
-                        // rt.addSuppressed(e);
-                        
-                        synchronized (es) {
+        final CompletableFuture<List<R>> future = new CompletableFuture<>();
+        final AtomicInteger remaining = new AtomicInteger((args.size() + chunk - 1) / chunk);
+        final Queue<RuntimeException> es = new ConcurrentLinkedQueue<>();
+        if (remaining.get() == 0) {
+            complete(future, results, es);
+        }
+        for (int from = 0; from < args.size(); from += chunk) {
+            final int start = from;
+            final int end = Math.min(from + chunk, args.size());
+            final long submitTime = System.nanoTime();
+            metrics.submitted();
+            tasks.add(() -> {
+                final long startTime = System.nanoTime();
+                metrics.started(startTime - submitTime);
+                if (elastic) {
+                    lastStart = startTime;
+                    if (startTime - submitTime > GROW_WAIT_NANOS) {
+                        grow();
+                    }
+                }
+                if (!future.isDone()) {
+                    for (int index = start; index < end; index++) {
+                        try {
+                            final R result = f.apply(args.get(index));
+                            results.set(index, result);
+                            onResult.accept(result, index);
+                            // :NOTE: Пробрасывать исходное
+                        } catch (final RuntimeException e) {
                             es.add(e);
                         }
                     }
-                    // :NOTE: Лишняя синхронизация
-                    // перенес cnt.inc();
-                    synchronized (results) {
-                        results.set(index, mapped);
-                        // cnt.inc();
-                    }
-                    cnt.inc();
-                });
-                tasks.notify();
-            }
-        });
+                    recordCost(System.nanoTime() - startTime, end - start);
+                }
+                metrics.completed(System.nanoTime() - startTime);
+                if (remaining.decrementAndGet() == 0) {
+                    complete(future, results, es);
+                }
+            });
+        }
+        // All workers are stuck in long tasks: nobody takes tasks to notice the queue wait growing
+        if (elastic && System.nanoTime() - lastStart > GROW_WAIT_NANOS) {
+            grow();
+        }
+        return future;
+    }
 
+    private static <R> void complete(final CompletableFuture<List<R>> future, final List<R> results, final Queue<RuntimeException> es) {
         if (!es.isEmpty()) {
-            RuntimeException first = es.get(0);
-            es.subList(1, es.size()).forEach(first::addSuppressed);
-            throw first;
+            final RuntimeException first = es.poll();
+            es.forEach(first::addSuppressed);
+            future.completeExceptionally(first);
+        } else {
+            future.complete(results);
         }
-        cnt.await();
-        return results;
     }
 
-    @Override
-    public void close() {
-        workers.forEach(Thread::interrupt);
-        for (final Thread thread : workers) {
-            while (true) {
-                try {
-                    thread.join();
-                    break;
-                } catch (final InterruptedException ignored) {
-    
-                }
-            }
+    /**
+     * Number of contiguous elements to run as a single task: as many as fit into
+     * {@link #TARGET_CHUNK_NANOS} by the measured cost, but no more than needed
+     * to give every worker {@link #CHUNKS_PER_WORKER} tasks for balancing.
+     */
+    private int chunkSize(final int size) {
+        final int balanced = Math.max(1, size / (workers.length * CHUNKS_PER_WORKER));
+        final double cost = elementNanos;
+        if (cost <= 0) {
+            return balanced;
         }
+        return (int) Math.max(1, Math.min(balanced, TARGET_CHUNK_NANOS / cost));
     }
 
-    // :NOTE: Убывающий
-    // теперь убывающий
-    private static class Counter {
-        private int cnt;
+    private void recordCost(final long nanos, final int elements) {
+        final double sample = (double) nanos / elements;
+        final double cost = elementNanos;
+        // Racy update is fine: losing a sample only slows down the adaptation
+        elementNanos = cost <= 0 ? sample : cost + (sample - cost) * COST_SMOOTHING;
+    }
 
-        public Counter(final int cnt) {
-            this.cnt = cnt;
+    /**
+     * Sets the share of the workers that the calling thread gets for its subsequent {@code map} calls
+     * relative to the other calling threads. Only {@link Scheduling#FAIR_SHARE} scheduling takes weights into account.
+     * @param weight positive weight, {@code 1} by default
+     */
+    public void setWeight(final int weight) {
+        if (tasks instanceof FairShareTaskQueue fair) {
+            fair.setWeight(weight);
+        } else if (weight < 1) {
+            throw new IllegalArgumentException("Weight should be positive");
         }
+    }
 
-        public synchronized void inc() {
-            if (--cnt <= 0) {
-                this.notify();
-            }
+    /**
+     * Returns the runtime metrics of this mapper, which can also be {@link ParallelMapperMetrics#register registered} in JMX.
+     * @return metrics of this mapper
+     */
+    public ParallelMapperMetrics metrics() {
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        metrics.unregister();
+        final List<Thread> running;
+        synchronized (workers) {
+            closed = true;
+            running = Arrays.stream(workers).filter(Objects::nonNull).toList();
         }
+        running.forEach(Thread::interrupt);
+        for (final Thread thread : running) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (final InterruptedException ignored) {
 
-        private synchronized void await() throws InterruptedException {
-            while (cnt > 0) {
-                wait();
+                }
             }
         }
     }
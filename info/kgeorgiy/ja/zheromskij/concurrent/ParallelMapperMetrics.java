@@ -0,0 +1,158 @@
+package info.kgeorgiy.ja.zheromskij.concurrent;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Counters and histograms of a {@link ParallelMapperImpl}.
+ * Recording takes a few additions to striped {@link LongAdder}s per task, which don't contend
+ * even when all workers record into the same bucket, so it is always on.
+ */
+public class ParallelMapperMetrics implements ParallelMapperMetricsMXBean {
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final AtomicInteger workers = new AtomicInteger();
+    private final Histogram waitTime = new Histogram();
+    private final Histogram runTime = new Histogram();
+    // Separate adders keep the slots of different workers on different cache lines
+    private final LongAdder[] idle;
+    private ObjectName name;
+
+    ParallelMapperMetrics(final int workers) {
+        idle = Stream.generate(LongAdder::new).limit(workers).toArray(LongAdder[]::new);
+    }
+
+    void submitted() {
+        submitted.increment();
+    }
+
+    void started(final long waitNanos) {
+        started.increment();
+        waitTime.record(waitNanos);
+    }
+
+    void completed(final long runNanos) {
+        completed.increment();
+        runTime.record(runNanos);
+    }
+
+    void workerStarted() {
+        workers.incrementAndGet();
+    }
+
+    void workerRetired() {
+        workers.decrementAndGet();
+    }
+
+    void idle(final int worker, final long nanos) {
+        idle[worker].add(nanos);
+    }
+
+    /**
+     * Registers these metrics in the platform MBean server.
+     * They are unregistered when the mapper is closed.
+     * @param name object name to register under, e.g. {@code info.kgeorgiy.ja.zheromskij:type=ParallelMapper,name=main}
+     * @throws JMException if the name is malformed or already taken
+     */
+    public synchronized void register(final String name) throws JMException {
+        unregister();
+        final ObjectName objectName = new ObjectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        this.name = objectName;
+    }
+
+    synchronized void unregister() {
+        if (name != null) {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.unregisterMBean(name);
+            } catch (final JMException ignored) {
+                // Already unregistered by someone else
+            }
+            name = null;
+        }
+    }
+
+    @Override
+    public int getWorkers() {
+        return workers.get();
+    }
+
+    @Override
+    public long getSubmittedTasks() {
+        return submitted.sum();
+    }
+
+    @Override
+    public long getCompletedTasks() {
+        return completed.sum();
+    }
+
+    @Override
+    public long getQueueLength() {
+        return Math.max(0, submitted.sum() - started.sum());
+    }
+
+    @Override
+    public long getRunningTasks() {
+        return Math.max(0, started.sum() - completed.sum());
+    }
+
+    @Override
+    public double getMeanWaitNanos() {
+        return waitTime.mean();
+    }
+
+    @Override
+    public double getMeanRunNanos() {
+        return runTime.mean();
+    }
+
+    @Override
+    public long[] getWaitTimeHistogram() {
+        return waitTime.snapshot();
+    }
+
+    @Override
+    public long[] getRunTimeHistogram() {
+        return runTime.snapshot();
+    }
+
+    @Override
+    public long[] getWorkerIdleNanos() {
+        return Arrays.stream(idle).mapToLong(LongAdder::sum).toArray();
+    }
+
+    /**
+     * Histogram of durations with power-of-two buckets.
+     * Equal tasks land in the same bucket, so every bucket is striped.
+     */
+    private static class Histogram {
+        private final LongAdder[] buckets = Stream.generate(LongAdder::new).limit(Long.SIZE).toArray(LongAdder[]::new);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+
+        void record(final long nanos) {
+            final long value = Math.max(1, nanos);
+            buckets[Long.SIZE - 1 - Long.numberOfLeadingZeros(value)].increment();
+            count.increment();
+            total.add(value);
+        }
+
+        double mean() {
+            final long n = count.sum();
+            return n == 0 ? 0 : (double) total.sum() / n;
+        }
+
+        long[] snapshot() {
+            return Arrays.stream(buckets).mapToLong(LongAdder::sum).toArray();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package info.kgeorgiy.ja.zheromskij.concurrent;
+
+/**
+ * Runtime metrics of a {@link ParallelMapperImpl}, readable through JMX.
+ * A task is a chunk of contiguous elements of a single {@code map} call.
+ * Histogram bucket {@code i} counts durations in {@code [2^i, 2^(i+1))} nanoseconds.
+ */
+public interface ParallelMapperMetricsMXBean {
+    /** Returns the number of running workers. */
+    int getWorkers();
+
+    /** Returns the number of tasks submitted so far. */
+    long getSubmittedTasks();
+
+    /** Returns the number of tasks that finished running so far. */
+    long getCompletedTasks();
+
+    /** Returns the number of tasks waiting for a worker. */
+    long getQueueLength();
+
+    /** Returns the number of tasks being run right now. */
+    long getRunningTasks();
+
+    /** Returns the mean time tasks spent in the queue, in nanoseconds. */
+    double getMeanWaitNanos();
+
+    /** Returns the mean time tasks spent running, in nanoseconds. */
+    double getMeanRunNanos();
+
+    /** Returns the histogram of the time tasks spent in the queue. */
+    long[] getWaitTimeHistogram();
+
+    /** Returns the histogram of the time tasks spent running. */
+    long[] getRunTimeHistogram();
+
+    /** Returns the total time the workers spent waiting for tasks, in nanoseconds, by worker slot. */
+    long[] getWorkerIdleNanos();
+}
@@ -0,0 +1,474 @@
+package info.kgeorgiy.ja.zheromskij.concurrent;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Parallel operations over primitive arrays, which don't box the elements.
+ * Arrays are split and processed in the same way as lists by the underlying {@link IterativeParallelism}.
+ */
+public class PrimitiveParallelism {
+    private final IterativeParallelism parallelism;
+
+    public PrimitiveParallelism() {
+        this(new IterativeParallelism());
+    }
+
+    /**
+     * Creates an instance that uses the splitting and the threads of the given one.
+     * @param parallelism underlying list parallelism
+     */
+    public PrimitiveParallelism(final IterativeParallelism parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    private static void checkNotEmpty(final int length) {
+        if (length == 0) {
+            throw new NoSuchElementException("No values given");
+        }
+    }
+
+    // int
+
+    /**
+     * Returns the maximum of the values.
+     * @param threads maximum number of threads to use for evaluation
+     * @param values array of values
+     * @return the largest value
+     * @throws InterruptedException if the execution of any thread was interrupted
+     * @throws NoSuchElementException if an empty array of values was given
+     */
+    public int maximum(final int threads, final int[] values) throws InterruptedException {
+        checkNotEmpty(values.length);
+        return parallelism.parallelReduction(values.length, threads, (from, to) -> {
+            int max = values[from];
+            for (int i = from + 1; i < to; i++) {
+                max = Math.max(max, values[i]);
+            }
+            return max;
+        }, Math::max).orElseThrow();
+    }
+
+    /**
+     * Returns the minimum of the values.
+     * @param threads maximum number of threads to use for evaluation
+     * @param values array of values
+     * @return the smallest value
+     * @throws InterruptedException if the execution of any thread was interrupted
+     * @throws NoSuchElementException if an empty array of values was given
+     */
+    public int minimum(final int threads, final int[] values) throws InterruptedException {
+        checkNotEmpty(values.length);
+        return parallelism.parallelReduction(values.length, threads, (from, to) -> {
+            int min = values[from];
+            for (int i = from + 1; i < to; i++) {
+                min = Math.min(min, values[i]);
+            }
+            return min;
+        }, Math::min).orElseThrow();
+    }
+
+    /**
+     * Returns the sum of the values, computed without overflow for up to {@code 2^32} values.
+     * @param threads maximum number of threads to use for evaluation
+     * @param values array of values
+     * @return the sum, {@code 0} for an empty array
+     * @throws InterruptedException if the execution of any thread was interrupted
+     */
+    public long sum(final int threads, final int[] values) throws InterruptedException {
+        return parallelism.parallelReduction(values.length, threads, (from, to) -> {
+            long sum = 0;
+            for (int i = from; i < to; i++) {
+                sum += values[i];
+            }
+            return sum;
+        }, Long::sum).orElse(0L);
+    }
+
+    /**
+     * Returns the number of values matching the predicate.
+     * @param threads maximum number of threads to use for evaluation
+     * @param values array of values
+     * @param predicate a non-interfering, stateless predicate to apply to the values
+     * @return the number of matching values
+     * @throws InterruptedException if the execution of any thread was interrupted
+     */
+    public int count(final int threads, final int[] values, final IntPredicate predicate) throws InterruptedException {
+        return parallelism.parallelReduction(values.length, threads, (from, to) -> {
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                if (predicate.test(values[i])) {
+                    count++;
+                }
+            }
+            return count;
+        }, Integer::sum).orElse(0);
+    }
+
+    /**
+     * Returns an array of the results of applying the function to the values.
+     * @param threads maximum number of threads to use for evaluation
+     * @param values array of values
+     * @param f a non-interfering, stateless function to apply to each value
+     * @return a new array with the results in the order of the values
+     * @throws InterruptedException if the execution of any thread was interrupted
+     */
+    public int[] map(final int threads, final int[] values, final IntUnaryOperator f) throws InterruptedException {
+        final int[] result = new int[values.length];
+        parallelism.parallelSlices(values.length, threads, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                result[i] = f.applyAsInt(values[i]);
+            }
+            return null;
+        });
+        return result;
+    }
+
+    /**
+     * Returns an array of the values matching the predicate.
+     * @param threads maximum number of threads to use for evaluation
+     * @param values array of values
+     * @param predicate a non-interfering, stateless predicate to apply to each value
+     * @return a new array with the matching values in their original order
+     * @throws InterruptedException if the execution of any thread was interrupted
+     */
+    public int[] filter(final int threads, final int[] values, final IntPredicate predicate) throws InterruptedException {
+        final List<int[]> slices = parallelism.parallelSlices(values.length, threads, (from, to) -> {
+            final int[] buffer = new int[to - from];
+            int size = 0;
+            for (int i = from; i < to; i++) {
+                if (predicate.test(values[i])) {
+                    buffer[size++] = values[i];
+                }
+            }
+            return size == buffer.length ? buffer : Arrays.copyOf(buffer, size);
+        });
+        final int[] result = new int[slices.stream().mapToInt(slice -> slice.length).sum()];
+        int offset = 0;
+        for (final int[] slice : slices) {
+            System.arraycopy(slice, 0, result, offset, slice.length);
+            offset += slice.length;
+        }
+        return result;
+    }
+
+    /**
+     * Returns an array of the results of applying the function to the elements of the list.
+     * @param threads maximum number of threads to use for evaluation
+     * @param values list of values
+     * @param f a non-interfering, stateless function to apply to each element
+     * @return a new array with the results in the order of the list
+     * @throws InterruptedException if the execution of any thread was interrupted
+     */
+    public <T> int[] mapToInt(final int threads, final List<? extends T> values, final ToIntFunction<? super T> f) throws InterruptedException {
+        final int[] result = new int[values.size()];
+        parallelism.parallelSlices(values.size(), threads, (from, to) -> {
+            final ListIterator<? extends T> it = values.listIterator(from);
+            for (int i = from; i < to; i++) {
+                result[i] = f.applyAsInt(it.next());
+            }
+            return null;
+        });
+        return result;
+    }
+
+    // long
+
+    /**
+     * Returns the maximum of the values.
+     * @param threads maximum number of threads to use for evaluation
+     * @param values array of values
+     * @return the largest value
+     * @throws InterruptedException if the execution of any thread was interrupted
+     * @throws NoSuchElementException if an empty array of values was given
+     */
+    public long maximum(final int threads, final long[] values) throws InterruptedException {
+        checkNotEmpty(values.length);
+        return parallelism.parallelReduction(values.length, threads, (from, to) -> {
+            long max = values[from];
+            for (int i = from + 1; i < to; i++) {
+                max = Math.max(max, values[i]);
+            }
+            return max;
+        }, Math::max).orElseThrow();
+    }
+
+    /**
+     * Returns the minimum of the values.
+     * @param threads maximum number of threads to use for evaluation
+     * @param values array of values
+     * @return the smallest value
+     * @throws InterruptedException if the execution of any thread was interrupted
+     * @throws NoSuchElementException if an empty array of values was given
+     */
+    public long minimum(final int threads, final long[] values) throws InterruptedException {
+        checkNotEmpty(values.length);
+        return parallelism.parallelReduction(values.length, threads, (from, to) -> {
+            long min = values[from];
+            for (int i = from + 1; i < to; i++) {
+                min = Math.min(min, values[i]);
+            }
+            return min;
+        }, Math::min).orElseThrow();
+    }
+
+    /**
+     * Returns the sum of the values, overflowing silently like {@code long} addition.
+     * @param threads maximum number of threads to use for evaluation
+     * @param values array of values
+     * @return the sum, {@code 0} for an empty array
+     * @throws InterruptedException if the execution of any thread was interrupted
+     */
+    public long sum(final int threads, final long[] values) throws InterruptedException {
+        return parallelism.parallelReduction(values.length, threads, (from, to) -> {
+            long sum = 0;
+            for (int i = from; i < to; i++) {
+                sum += values[i];
+            }
+            return sum;
+        }, Long::sum).orElse(0L);
+    }
+
+    /**
+     * Returns the number of values matching the predicate.
+     * @param threads maximum number of threads to use for evaluation
+     * @param values array of values
+     * @param predicate a non-interfering, stateless predicate to apply to the values
+     * @return the number of matching values
+     * @throws InterruptedException if the execution of any thread was interrupted
+     */
+    public int count(final int threads, final long[] values, final LongPredicate predicate) throws InterruptedException {
+        return parallelism.parallelReduction(values.length, threads, (from, to) -> {
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                if (predicate.test(values[i])) {
+                    count++;
+                }
+            }
+            return count;
+        }, Integer::sum).orElse(0);
+    }
+
+    /**
+     * Returns an array of the results of applying the function to the values.
+     * @param threads maximum number of threads to use for evaluation
+     * @param values array of values
+     * @param f a non-interfering, stateless function to apply to each value
+     * @return a new array with the results in the order of the values
+     * @throws InterruptedException if the execution of any thread was interrupted
+     */
+    public long[] map(final int threads, final long[] values, final LongUnaryOperator f) throws InterruptedException {
+        final long[] result = new long[values.length];
+        parallelism.parallelSlices(values.length, threads, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                result[i] = f.applyAsLong(values[i]);
+            }
+            return null;
+        });
+        return result;
+    }
+
+    /**
+     * Returns an array of the values matching the predicate.
+     * @param threads maximum number of threads to use for evaluation
+     * @param values array of values
+     * @param predicate a non-interfering, stateless predicate to apply to each value
+     * @return a new array with the matching values in their original order
+     * @throws InterruptedException if the execution of any thread was interrupted
+     */
+    public long[] filter(final int threads, final long[] values, final LongPredicate predicate) throws InterruptedException {
+        final List<long[]> slices = parallelism.parallelSlices(values.length, threads, (from, to) -> {
+            final long[] buffer = new long[to - from];
+            int size = 0;
+            for (int i = from; i < to; i++) {
+                if (predicate.test(values[i])) {
+                    buffer[size++] = values[i];
+                }
+            }
+            return size == buffer.length ? buffer : Arrays.copyOf(buffer, size);
+        });
+        final long[] result = new long[slices.stream().mapToInt(slice -> slice.length).sum()];
+        int offset = 0;
+        for (final long[] slice : slices) {
+            System.arraycopy(slice, 0, result, offset, slice.length);
+            offset += slice.length;
+        }
+        return result;
+    }
+
+    /**
+     * Returns an array of the results of applying the function to the elements of the list.
+     * @param threads maximum number of threads to use for evaluation
+     * @param values list of values
+     * @param f a non-interfering, stateless function to apply to each element
+     * @return a new array with the results in the order of the list
+     * @throws InterruptedException if the execution of any thread was interrupted
+     */
+    public <T> long[] mapToLong(final int threads, final List<? extends T> values, final ToLongFunction<? super T> f) throws InterruptedException {
+        final long[] result = new long[values.size()];
+        parallelism.parallelSlices(values.size(), threads, (from, to) -> {
+            final ListIterator<? extends T> it = values.listIterator(from);
+            for (int i = from; i < to; i++) {
+                result[i] = f.applyAsLong(it.next());
+            }
+            return null;
+        });
+        return result;
+    }
+
+    // double
+
+    /**
+     * Returns the maximum of the values, as defined by {@link Math#max(double, double)}.
+     * @param threads maximum number of threads to use for evaluation
+     * @param values array of values
+     * @return the largest value
+     * @throws InterruptedException if the execution of any thread was interrupted
+     * @throws NoSuchElementException if an empty array of values was given
+     */
+    public double maximum(final int threads, final double[] values) throws InterruptedException {
+        checkNotEmpty(values.length);
+        return parallelism.parallelReduction(values.length, threads, (from, to) -> {
+            double max = values[from];
+            for (int i = from + 1; i < to; i++) {
+                max = Math.max(max, values[i]);
+            }
+            return max;
+        }, Math::max).orElseThrow();
+    }
+
+    /**
+     * Returns the minimum of the values, as defined by {@link Math#min(double, double)}.
+     * @param threads maximum number of threads to use for evaluation
+     * @param values array of values
+     * @return the smallest value
+     * @throws InterruptedException if the execution of any thread was interrupted
+     * @throws NoSuchElementException if an empty array of values was given
+     */
+    public double minimum(final int threads, final double[] values) throws InterruptedException {
+        checkNotEmpty(values.length);
+        return parallelism.parallelReduction(values.length, threads, (from, to) -> {
+            double min = values[from];
+            for (int i = from + 1; i < to; i++) {
+                min = Math.min(min, values[i]);
+            }
+            return min;
+        }, Math::min).orElseThrow();
+    }
+
+    /**
+     * Returns the sum of the values. The order of additions depends on the splitting,
+     * so the rounding may differ from the sequential sum.
+     * @param threads maximum number of threads to use for evaluation
+     * @param values array of values
+     * @return the sum, {@code 0} for an empty array
+     * @throws InterruptedException if the execution of any thread was interrupted
+     */
+    public double sum(final int threads, final double[] values) throws InterruptedException {
+        return parallelism.parallelReduction(values.length, threads, (from, to) -> {
+            double sum = 0;
+            for (int i = from; i < to; i++) {
+                sum += values[i];
+            }
+            return sum;
+        }, Double::sum).orElse(0.0);
+    }
+
+    /**
+     * Returns the number of values matching the predicate.
+     * @param threads maximum number of threads to use for evaluation
+     * @param values array of values
+     * @param predicate a non-interfering, stateless predicate to apply to the values
+     * @return the number of matching values
+     * @throws InterruptedException if the execution of any thread was interrupted
+     */
+    public int count(final int threads, final double[] values, final DoublePredicate predicate) throws InterruptedException {
+        return parallelism.parallelReduction(values.length, threads, (from, to) -> {
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                if (predicate.test(values[i])) {
+                    count++;
+                }
+            }
+            return count;
+        }, Integer::sum).orElse(0);
+    }
+
+    /**
+     * Returns an array of the results of applying the function to the values.
+     * @param threads maximum number of threads to use for evaluation
+     * @param values array of values
+     * @param f a non-interfering, stateless function to apply to each value
+     * @return a new array with the results in the order of the values
+     * @throws InterruptedException if the execution of any thread was interrupted
+     */
+    public double[] map(final int threads, final double[] values, final DoubleUnaryOperator f) throws InterruptedException {
+        final double[] result = new double[values.length];
+        parallelism.parallelSlices(values.length, threads, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                result[i] = f.applyAsDouble(values[i]);
+            }
+            return null;
+        });
+        return result;
+    }
+
+    /**
+     * Returns an array of the values matching the predicate.
+     * @param threads maximum number of threads to use for evaluation
+     * @param values array of values
+     * @param predicate a non-interfering, stateless predicate to apply to each value
+     * @return a new array with the matching values in their original order
+     * @throws InterruptedException if the execution of any thread was interrupted
+     */
+    public double[] filter(final int threads, final double[] values, final DoublePredicate predicate) throws InterruptedException {
+        final List<double[]> slices = parallelism.parallelSlices(values.length, threads, (from, to) -> {
+            final double[] buffer = new double[to - from];
+            int size = 0;
+            for (int i = from; i < to; i++) {
+                if (predicate.test(values[i])) {
+                    buffer[size++] = values[i];
+                }
+            }
+            return size == buffer.length ? buffer : Arrays.copyOf(buffer, size);
+        });
+        final double[] result = new double[slices.stream().mapToInt(slice -> slice.length).sum()];
+        int offset = 0;
+        for (final double[] slice : slices) {
+            System.arraycopy(slice, 0, result, offset, slice.length);
+            offset += slice.length;
+        }
+        return result;
+    }
+
+    /**
+     * Returns an array of the results of applying the function to the elements of the list.
+     * @param threads maximum number of threads to use for evaluation
+     * @param values list of values
+     * @param f a non-interfering, stateless function to apply to each element
+     * @return a new array with the results in the order of the list
+     * @throws InterruptedException if the execution of any thread was interrupted
+     */
+    public <T> double[] mapToDouble(final int threads, final List<? extends T> values, final ToDoubleFunction<? super T> f) throws InterruptedException {
+        final double[] result = new double[values.size()];
+        parallelism.parallelSlices(values.size(), threads, (from, to) -> {
+            final ListIterator<? extends T> it = values.listIterator(from);
+            for (int i = from; i < to; i++) {
+                result[i] = f.applyAsDouble(it.next());
+            }
+            return null;
+        });
+        return result;
+    }
+}
@@ -0,0 +1,48 @@
+package info.kgeorgiy.ja.zheromskij.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Single FIFO queue shared by all workers.
+ */
+class SharedTaskQueue implements TaskQueue {
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    // Not a monitor: waiting on one would pin the carrier of a virtual worker
+    private final Lock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    @Override
+    public void add(final Runnable task) {
+        lock.lock();
+        try {
+            tasks.add(task);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(final int worker, final long timeout) throws InterruptedException {
+        lock.lock();
+        try {
+            long remaining = timeout;
+            while (tasks.isEmpty()) {
+                if (timeout == Long.MAX_VALUE) {
+                    notEmpty.await();
+                } else if (remaining <= 0) {
+                    return null;
+                } else {
+                    remaining = notEmpty.awaitNanos(remaining);
+                }
+            }
+            return tasks.poll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
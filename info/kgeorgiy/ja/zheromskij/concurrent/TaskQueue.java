@@ -0,0 +1,21 @@
+package info.kgeorgiy.ja.zheromskij.concurrent;
+
+/**
+ * Source of tasks for the workers of {@link ParallelMapperImpl}.
+ */
+interface TaskQueue {
+    /**
+     * Schedules the task for execution by one of the workers.
+     * @param task task to schedule
+     */
+    void add(Runnable task);
+
+    /**
+     * Waits for a task and removes it from the queue.
+     * @param worker index of the requesting worker
+     * @param timeout maximum time to wait, in nanoseconds, {@link Long#MAX_VALUE} to wait indefinitely
+     * @return the next task for the worker or {@code null} if none appeared in time
+     * @throws InterruptedException if the worker was interrupted while waiting
+     */
+    Runnable poll(int worker, long timeout) throws InterruptedException;
+}
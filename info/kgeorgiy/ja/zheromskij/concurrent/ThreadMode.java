@@ -0,0 +1,41 @@
+package info.kgeorgiy.ja.zheromskij.concurrent;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Kind of threads to run the work in.
+ */
+public enum ThreadMode {
+    /** Ordinary platform threads, one OS thread each. */
+    PLATFORM,
+    /**
+     * Virtual threads: cheap to start and release their carrier while blocked.
+     * Requires a runtime with virtual threads support (Java 21+).
+     */
+    VIRTUAL;
+
+    /**
+     * Returns a factory of threads of this kind.
+     * @return thread factory
+     * @throws UnsupportedOperationException if the runtime doesn't support this kind of threads
+     */
+    public ThreadFactory factory() {
+        return switch (this) {
+            case PLATFORM -> Thread::new;
+            case VIRTUAL -> virtualFactory();
+        };
+    }
+
+    // Looked up reflectively to stay compilable for Java 17
+    private static ThreadFactory virtualFactory() {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (final NoSuchMethodException | ClassNotFoundException e) {
+            throw new UnsupportedOperationException("Virtual threads aren't supported by this runtime", e);
+        } catch (final IllegalAccessException | InvocationTargetException e) {
+            throw new UnsupportedOperationException("Couldn't create virtual thread factory", e);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package info.kgeorgiy.ja.zheromskij.concurrent;
+
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Per-worker deques: a worker takes tasks from the head of its own deque
+ * and steals from the tails of the other deques when its own one is empty.
+ * <p>
+ * There is no shared counter: a task goes to a random deque, and a worker that finds nothing
+ * parks in its own slot, from which the next submitter wakes it.
+ */
+class WorkStealingTaskQueue implements TaskQueue {
+    private final List<Deque<Runnable>> deques;
+    // Parked workers by index, null for the ones busy or scanning
+    private final AtomicReferenceArray<Thread> parked;
+
+    WorkStealingTaskQueue(final int workers) {
+        deques = Stream.<Deque<Runnable>>generate(ConcurrentLinkedDeque::new).limit(workers).toList();
+        parked = new AtomicReferenceArray<>(workers);
+    }
+
+    @Override
+    public void add(final Runnable task) {
+        final int target = ThreadLocalRandom.current().nextInt(deques.size());
+        deques.get(target).addLast(task);
+        // Wakes a single parked worker, the busy ones will find the task once done
+        for (int i = 0; i < deques.size(); i++) {
+            final int index = (target + i) % deques.size();
+            final Thread worker = parked.get(index);
+            if (worker != null && parked.compareAndSet(index, worker, null)) {
+                LockSupport.unpark(worker);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public Runnable poll(final int worker, final long timeout) throws InterruptedException {
+        final long deadline = timeout == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + timeout;
+        while (true) {
+            Runnable task = scan(worker);
+            if (task != null) {
+                return task;
+            }
+            parked.set(worker, Thread.currentThread());
+            // Tasks added before the slot was set haven't seen it, so look once more
+            task = scan(worker);
+            if (task != null) {
+                parked.compareAndSet(worker, Thread.currentThread(), null);
+                return task;
+            }
+            if (deadline == Long.MAX_VALUE) {
+                LockSupport.park(this);
+            } else {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    if (parked.compareAndSet(worker, Thread.currentThread(), null)) {
+                        return null;
+                    }
+                    // A submitter has cleared the slot to wake this worker, so its task is to be taken here
+                    continue;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+            parked.compareAndSet(worker, Thread.currentThread(), null);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    private Runnable scan(final int worker) {
+        final Runnable own = deques.get(worker).pollFirst();
+        if (own != null) {
+            return own;
+        }
+        for (int i = 1; i < deques.size(); i++) {
+            final Runnable stolen = deques.get((worker + i) % deques.size()).pollLast();
+            if (stolen != null) {
+                return stolen;
+            }
+        }
+        return null;
+    }
+}
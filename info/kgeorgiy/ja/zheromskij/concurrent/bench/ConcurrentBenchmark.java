@@ -0,0 +1,239 @@
+package info.kgeorgiy.ja.zheromskij.concurrent.bench;
+
+import info.kgeorgiy.ja.zheromskij.concurrent.IterativeParallelism;
+import info.kgeorgiy.ja.zheromskij.concurrent.ParallelMapperImpl;
+import info.kgeorgiy.ja.zheromskij.concurrent.ThreadMode;
+import info.kgeorgiy.java.advanced.concurrent.ListIP;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Wall-clock benchmarks of the {@link ListIP} operations of the concurrent package.
+ * Sweeps list size, thread count, per-element cost, cost skew and execution mode,
+ * prints a summary to {@code System.err} and the results as JSON.
+ * <p>
+ * Usage: {@code java ConcurrentBenchmark [output.json] [param=value,value...]...},
+ * where parameters are {@code sizes}, {@code threads}, {@code costs}, {@code skews}, {@code modes},
+ * {@code operations}, {@code warmup} and {@code measure} (in milliseconds).
+ * Results are written to standard output if no output file is given.
+ */
+public class ConcurrentBenchmark {
+    // Compared against the result of the busy loop, so that the loop can't be eliminated
+    private static final int SINK = 1_000_003;
+
+    /**
+     * Way of running the operations.
+     */
+    private enum Mode {
+        THREADS, VIRTUAL_THREADS, FORK_JOIN, MAPPER, MAPPER_STEALING
+    }
+
+    /**
+     * Distribution of the per-element cost over the list.
+     */
+    private enum Skew {
+        /** Every element costs the same. */
+        UNIFORM,
+        /** The first tenth of the list costs 10 times more per element. */
+        HEAD
+    }
+
+    private static final Map<String, Operation> OPERATIONS = new LinkedHashMap<>();
+
+    static {
+        OPERATIONS.put("maximum", (ip, threads, values, cost) -> ip.maximum(threads, values, comparator(cost)));
+        OPERATIONS.put("minimum", (ip, threads, values, cost) -> ip.minimum(threads, values, comparator(cost)));
+        // No element matches, so neither operation can finish early
+        OPERATIONS.put("any", (ip, threads, values, cost) -> ip.any(threads, values, predicate(cost, value -> value < 0)));
+        OPERATIONS.put("all", (ip, threads, values, cost) -> ip.all(threads, values, predicate(cost, value -> value >= 0)));
+        OPERATIONS.put("filter", (ip, threads, values, cost) -> ip.filter(threads, values, predicate(cost, value -> value % 2 == 0)));
+        OPERATIONS.put("map", (ip, threads, values, cost) -> ip.map(threads, values, value -> work(value, cost) + value));
+        OPERATIONS.put("join", (ip, threads, values, cost) -> ip.join(threads, values));
+    }
+
+    public static void main(final String[] args) throws InterruptedException, IOException {
+        final Map<String, String> params = new HashMap<>(Map.of(
+                "sizes", "1000,100000,1000000",
+                "threads", "1,2,4," + Runtime.getRuntime().availableProcessors(),
+                "costs", "0,100",
+                "skews", "UNIFORM,HEAD",
+                "modes", Arrays.stream(Mode.values()).map(Mode::name).collect(Collectors.joining(",")),
+                "operations", String.join(",", OPERATIONS.keySet()),
+                "warmup", "200",
+                "measure", "500"
+        ));
+        Path output = null;
+        for (final String arg : args) {
+            final int eq = arg.indexOf('=');
+            if (eq < 0) {
+                output = Path.of(arg);
+            } else if (params.containsKey(arg.substring(0, eq))) {
+                params.put(arg.substring(0, eq), arg.substring(eq + 1));
+            } else {
+                System.err.println("Unknown parameter " + arg);
+                return;
+            }
+        }
+
+        final List<Result> results = new ArrayList<>();
+        for (final Mode mode : Mode.values()) {
+            if (!list(params, "modes").contains(mode.name())) {
+                continue;
+            }
+            for (final int threads : ints(params, "threads")) {
+                try (ParallelMapperImpl mapper = createMapper(mode, threads)) {
+                    final IterativeParallelism ip;
+                    try {
+                        ip = create(mode, mapper);
+                    } catch (final UnsupportedOperationException e) {
+                        System.err.printf("%s: skipped, %s%n", mode, e.getMessage());
+                        break;
+                    }
+                    for (final int size : ints(params, "sizes")) {
+                        for (final int cost : ints(params, "costs")) {
+                            for (final String skew : list(params, "skews")) {
+                                final List<Integer> values = values(size, cost, Skew.valueOf(skew));
+                                for (final String operation : list(params, "operations")) {
+                                    final Result result = measure(
+                                            operation, mode, threads, size, cost, skew,
+                                            () -> OPERATIONS.get(operation).run(ip, threads, values, cost),
+                                            Long.parseLong(params.get("warmup")),
+                                            Long.parseLong(params.get("measure"))
+                                    );
+                                    System.err.println(result);
+                                    results.add(result);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        final String json = results.stream().map(Result::toJson).collect(Collectors.joining(",\n", "[\n", "\n]\n"));
+        if (output == null) {
+            System.out.print(json);
+        } else {
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(output, StandardCharsets.UTF_8))) {
+                writer.print(json);
+            }
+        }
+    }
+
+    private static ParallelMapperImpl createMapper(final Mode mode, final int threads) {
+        return switch (mode) {
+            case MAPPER -> new ParallelMapperImpl(threads, ParallelMapperImpl.Scheduling.SHARED);
+            case MAPPER_STEALING -> new ParallelMapperImpl(threads, ParallelMapperImpl.Scheduling.WORK_STEALING);
+            default -> null;
+        };
+    }
+
+    private static IterativeParallelism create(final Mode mode, final ParallelMapperImpl mapper) {
+        return switch (mode) {
+            case THREADS -> new IterativeParallelism(ThreadMode.PLATFORM);
+            case VIRTUAL_THREADS -> new IterativeParallelism(ThreadMode.VIRTUAL);
+            case FORK_JOIN -> new IterativeParallelism(IterativeParallelism.Splitting.FORK_JOIN);
+            case MAPPER, MAPPER_STEALING -> new IterativeParallelism(mapper);
+        };
+    }
+
+    /**
+     * Values are non-negative; the cost of an element is encoded in its high bits
+     * as a multiplier of the base cost, so that the skew travels with the element.
+     */
+    private static List<Integer> values(final int size, final int cost, final Skew skew) {
+        final Random random = new Random(size * 31L + cost);
+        return IntStream.range(0, size)
+                .map(i -> (skew == Skew.HEAD && i < size / 10 ? 10 : 1) << 24 | random.nextInt(1 << 24))
+                .boxed()
+                .toList();
+    }
+
+    /**
+     * Burns about {@code cost} iterations per unit of the cost multiplier of the value.
+     */
+    private static int work(final int value, final int cost) {
+        int hash = value;
+        for (int i = (value >>> 24) * cost; i > 0; i--) {
+            hash = hash * 31 + i;
+        }
+        return hash == SINK ? 1 : 0;
+    }
+
+    private static Comparator<Integer> comparator(final int cost) {
+        return (a, b) -> Integer.compare(a + work(a, cost), b + work(b, cost));
+    }
+
+    private static Predicate<Integer> predicate(final int cost, final Predicate<Integer> predicate) {
+        return value -> work(value, cost) == 0 && predicate.test(value);
+    }
+
+    private static Result measure(
+            final String operation, final Mode mode, final int threads, final int size, final int cost, final String skew,
+            final Action action, final long warmupMillis, final long measureMillis
+    ) throws InterruptedException {
+        final long warmupEnd = System.nanoTime() + warmupMillis * 1_000_000;
+        while (System.nanoTime() < warmupEnd) {
+            action.run();
+        }
+        final List<Long> samples = new ArrayList<>();
+        final long measureEnd = System.nanoTime() + measureMillis * 1_000_000;
+        do {
+            final long start = System.nanoTime();
+            action.run();
+            samples.add(System.nanoTime() - start);
+        } while (System.nanoTime() < measureEnd);
+
+        final double mean = samples.stream().mapToLong(Long::longValue).average().orElseThrow() / 1e3;
+        final double variance = samples.stream().mapToDouble(sample -> Math.pow(sample / 1e3 - mean, 2)).sum()
+                / Math.max(1, samples.size() - 1);
+        return new Result(operation, mode, threads, size, cost, skew, samples.size(), mean, Math.sqrt(variance));
+    }
+
+    private static List<String> list(final Map<String, String> params, final String name) {
+        return List.of(params.get(name).split(","));
+    }
+
+    private static List<Integer> ints(final Map<String, String> params, final String name) {
+        return list(params, name).stream().map(Integer::parseInt).toList();
+    }
+
+    @FunctionalInterface
+    private interface Action {
+        void run() throws InterruptedException;
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        void run(ListIP ip, int threads, List<Integer> values, int cost) throws InterruptedException;
+    }
+
+    /**
+     * Mean and standard deviation of the time of a single operation, in microseconds.
+     */
+    private record Result(
+            String operation, Mode mode, int threads, int size, int cost, String skew,
+            int samples, double mean, double deviation
+    ) {
+        String toJson() {
+            return String.format(Locale.ROOT,
+                    "  {\"benchmark\": \"%s\", \"params\": {\"mode\": \"%s\", \"threads\": %d, \"size\": %d, \"cost\": %d, \"skew\": \"%s\"}, "
+                            + "\"mode\": \"avgt\", \"unit\": \"us/op\", \"samples\": %d, \"score\": %.3f, \"scoreDeviation\": %.3f}",
+                    operation, mode, threads, size, cost, skew, samples, mean, deviation);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-8s %-16s threads=%-3d size=%-8d cost=%-5d skew=%-8s %12.1f +- %.1f us/op",
+                    operation, mode, threads, size, cost, skew, mean, deviation);
+        }
+    }
+}
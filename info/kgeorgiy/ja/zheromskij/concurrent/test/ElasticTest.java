@@ -0,0 +1,72 @@
+package info.kgeorgiy.ja.zheromskij.concurrent.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import info.kgeorgiy.ja.zheromskij.concurrent.ParallelMapperImpl;
+import info.kgeorgiy.ja.zheromskij.concurrent.ParallelMapperImpl.Scheduling;
+import info.kgeorgiy.ja.zheromskij.concurrent.ThreadMode;
+
+public class ElasticTest {
+    private static final long KEEP_ALIVE_MILLIS = 100;
+    private static final long RETIRE_TIMEOUT_MILLIS = 5000;
+
+    private static Integer blocking(final Integer x) {
+        try {
+            Thread.sleep(50);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return x;
+    }
+
+    private static List<Integer> range(final int size) {
+        return IntStream.range(0, size).boxed().toList();
+    }
+
+    @Test
+    void growAndRetireTest() throws InterruptedException {
+        for (final Scheduling scheduling : Scheduling.values()) {
+            try (ParallelMapperImpl mapper = new ParallelMapperImpl(
+                    1, 4, KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS, scheduling, ThreadMode.PLATFORM
+            )) {
+                assertEquals(1, mapper.metrics().getWorkers());
+                assertEquals(range(8), mapper.map(ElasticTest::blocking, range(8)));
+                assertTrue(mapper.metrics().getWorkers() > 1, scheduling + ": no workers were added");
+
+                final long deadline = System.currentTimeMillis() + RETIRE_TIMEOUT_MILLIS;
+                while (mapper.metrics().getWorkers() > 1 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(KEEP_ALIVE_MILLIS);
+                }
+                assertEquals(1, mapper.metrics().getWorkers(), scheduling + ": idle workers weren't stopped");
+                // Retired slots are reused
+                assertEquals(range(8), mapper.map(ElasticTest::blocking, range(8)));
+            }
+        }
+    }
+
+    @Test
+    void fixedSizeTest() throws InterruptedException {
+        try (ParallelMapperImpl mapper = new ParallelMapperImpl(2)) {
+            assertEquals(range(8), mapper.map(ElasticTest::blocking, range(8)));
+            assertEquals(2, mapper.metrics().getWorkers());
+        }
+    }
+
+    @Test
+    void invalidSizesTest() {
+        assertThrows(IllegalArgumentException.class, () -> new ParallelMapperImpl(
+                0, 4, KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS, Scheduling.SHARED, ThreadMode.PLATFORM
+        ));
+        assertThrows(IllegalArgumentException.class, () -> new ParallelMapperImpl(
+                3, 2, KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS, Scheduling.SHARED, ThreadMode.PLATFORM
+        ));
+    }
+}
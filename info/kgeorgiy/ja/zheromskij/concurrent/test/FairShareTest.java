@@ -0,0 +1,58 @@
+package info.kgeorgiy.ja.zheromskij.concurrent.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import info.kgeorgiy.ja.zheromskij.concurrent.ParallelMapperImpl;
+import info.kgeorgiy.ja.zheromskij.concurrent.ParallelMapperImpl.Scheduling;
+
+public class FairShareTest {
+    private static Integer slow(final Integer x) {
+        try {
+            Thread.sleep(1);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return x;
+    }
+
+    private static List<Integer> range(final int size) {
+        return IntStream.range(0, size).boxed().toList();
+    }
+
+    @Test
+    void smallBatchTest() throws Exception {
+        final ExecutorService caller = Executors.newSingleThreadExecutor();
+        try (ParallelMapperImpl mapper = new ParallelMapperImpl(2, Scheduling.FAIR_SHARE)) {
+            // Measures the cost of an element, so that the large batch is split into many tasks
+            mapper.map(FairShareTest::slow, range(20));
+            final CompletableFuture<List<Integer>> large = mapper.mapAsync(FairShareTest::slow, range(1000));
+            final List<Integer> small = caller.submit(() -> mapper.map(FairShareTest::slow, range(4))).get();
+            assertEquals(range(4), small);
+            assertFalse(large.isDone(), "Small batch waited for the large one");
+            assertEquals(range(1000), large.get());
+        } finally {
+            caller.shutdownNow();
+        }
+    }
+
+    @Test
+    void weightTest() throws InterruptedException {
+        for (final Scheduling scheduling : Scheduling.values()) {
+            try (ParallelMapperImpl mapper = new ParallelMapperImpl(2, scheduling)) {
+                assertThrows(IllegalArgumentException.class, () -> mapper.setWeight(0));
+                mapper.setWeight(3);
+                assertEquals(range(100), mapper.map(FairShareTest::slow, range(100)));
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package info.kgeorgiy.ja.zheromskij.concurrent.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import info.kgeorgiy.ja.zheromskij.concurrent.ParallelMapperImpl;
+import info.kgeorgiy.ja.zheromskij.concurrent.ParallelMapperImpl.Scheduling;
+
+public class SchedulingTest {
+    private static final List<Integer> THREADS = List.of(1, 2, 5);
+    private static final int CALLERS = 4;
+
+    private static List<Integer> range(final int from, final int to) {
+        return IntStream.range(from, to).boxed().toList();
+    }
+
+    // Uneven cost, so that tasks finish out of order
+    private static Integer square(final Integer x) {
+        final long start = System.nanoTime();
+        while (System.nanoTime() - start < (x % 7) * 10_000) {
+            Thread.onSpinWait();
+        }
+        return x * x;
+    }
+
+    private static List<Integer> squares(final List<Integer> values) {
+        return values.stream().map(x -> x * x).toList();
+    }
+
+    @Test
+    void orderedResultsTest() throws InterruptedException {
+        for (final Scheduling scheduling : Scheduling.values()) {
+            for (final int threads : THREADS) {
+                try (ParallelMapperImpl mapper = new ParallelMapperImpl(threads, scheduling)) {
+                    for (final int size : List.of(0, 1, 3, 1000)) {
+                        final List<Integer> values = range(0, size);
+                        assertEquals(squares(values), mapper.map(SchedulingTest::square, values), scheduling + " " + threads);
+                        assertEquals(squares(values), mapper.map(SchedulingTest::square, new LinkedList<>(values)), scheduling + " " + threads);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void exceptionTest() throws InterruptedException {
+        final Function<Integer, Integer> failing = x -> {
+            if (x % 100 == 42) {
+                throw new IllegalStateException("Failed on " + x);
+            }
+            return x;
+        };
+        for (final Scheduling scheduling : Scheduling.values()) {
+            for (final int threads : THREADS) {
+                try (ParallelMapperImpl mapper = new ParallelMapperImpl(threads, scheduling)) {
+                    final IllegalStateException e = assertThrows(IllegalStateException.class, () -> mapper.map(failing, range(0, 1000)));
+                    assertEquals(9, e.getSuppressed().length, scheduling + " " + threads);
+                    // The mapper stays usable after a failed call
+                    final List<Integer> values = range(0, 100);
+                    assertEquals(squares(values), mapper.map(SchedulingTest::square, values), scheduling + " " + threads);
+                }
+            }
+        }
+    }
+
+    @Test
+    void concurrentCallersTest() throws Exception {
+        final ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+        try {
+            for (final Scheduling scheduling : Scheduling.values()) {
+                for (final int threads : THREADS) {
+                    try (ParallelMapperImpl mapper = new ParallelMapperImpl(threads, scheduling)) {
+                        final List<Future<List<Integer>>> results = new ArrayList<>();
+                        for (int caller = 0; caller < CALLERS; caller++) {
+                            final List<Integer> values = range(caller * 1000, caller * 1000 + 500);
+                            results.add(callers.submit(() -> mapper.map(SchedulingTest::square, values)));
+                        }
+                        for (int caller = 0; caller < CALLERS; caller++) {
+                            assertEquals(squares(range(caller * 1000, caller * 1000 + 500)), results.get(caller).get(), scheduling + " " + threads);
+                        }
+                    }
+                }
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package info.kgeorgiy.ja.zheromskij.walk;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ * Groups files with equal contents.
+ * <p>
+ * Files are first grouped by size, then by the digest of the first block, and only files
+ * still sharing a group are hashed in full, so most files with unique contents are never read in full.
+ * Files no longer than a block are hashed in full right after grouping by size.
+ * Unlike the streaming modes, all the file names are kept in memory, as grouping needs them all.
+ */
+class DuplicateIndex {
+    private static final int PREFIX = 1 << 12;
+
+    private final int threads;
+    private final Walk.Factory factory;
+    private final List<String> files = new ArrayList<>();
+
+    DuplicateIndex(final int threads, final Walk.Factory factory) {
+        this.threads = threads;
+        this.factory = factory;
+    }
+
+    void add(final String fileName) {
+        files.add(fileName);
+    }
+
+    /**
+     * Writes the groups of duplicates, in the order of their first files, separated by empty lines.
+     * Every line holds the digest and the file name, as in the ordinary output.
+     */
+    void write(final Writer writer, final String outputFileName) throws NoSuchAlgorithmException, InterruptedException {
+        final List<Integer> all = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            all.add(i);
+        }
+        final Object[] sizes = new Object[files.size()];
+        final List<List<Integer>> sized = group(List.of(all), sizes, (walk, fileName) -> {
+            try {
+                return Files.size(Path.of(fileName));
+            } catch (final InvalidPathException | IOException e) {
+                Walk.printError("Couldn't get size of %s", fileName, e);
+                return null;
+            }
+        });
+
+        final List<List<Integer>> candidates = new ArrayList<>();
+        final List<List<Integer>> large = new ArrayList<>();
+        for (final List<Integer> group : sized) {
+            ((Long) sizes[group.get(0)] > PREFIX ? large : candidates).add(group);
+        }
+        candidates.addAll(group(large, new Object[files.size()], (walk, fileName) -> wrap(walk.prefixDigest(fileName, PREFIX))));
+
+        final Object[] digests = new Object[files.size()];
+        final List<List<Integer>> duplicates = group(candidates, digests, (walk, fileName) -> wrap(walk.digest(fileName)));
+        duplicates.sort(Comparator.comparing(group -> group.get(0)));
+
+        final Walk walk = factory.create();
+        try {
+            for (final List<Integer> group : duplicates) {
+                if (group != duplicates.get(0)) {
+                    writer.write(System.lineSeparator());
+                }
+                for (final int index : group) {
+                    writer.write(walk.formatLine(((ByteBuffer) digests[index]).array(), files.get(index)));
+                }
+            }
+        } catch (final IOException e) {
+            Walk.printError("Error while writing to file %s", outputFileName, e);
+        }
+    }
+
+    private static ByteBuffer wrap(final byte[] digest) {
+        return digest == null ? null : ByteBuffer.wrap(digest);
+    }
+
+    /**
+     * Splits every group by the key of its files, computed on the workers, and returns the parts
+     * with more than one file. Files with {@code null} key are dropped.
+     * @param keys receives the keys by file index
+     */
+    private List<List<Integer>> group(
+            final List<List<Integer>> groups,
+            final Object[] keys,
+            final BiFunction<Walk, String, Object> key
+    ) throws NoSuchAlgorithmException, InterruptedException {
+        final List<Integer> indices = groups.stream().flatMap(List::stream).toList();
+        final AtomicInteger next = new AtomicInteger();
+        final List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < Math.min(threads, indices.size()); i++) {
+            final Walk walk = factory.create();
+            workers.add(new Thread(() -> {
+                for (int j = next.getAndIncrement(); j < indices.size(); j = next.getAndIncrement()) {
+                    final int index = indices.get(j);
+                    keys[index] = key.apply(walk, files.get(index));
+                }
+            }));
+        }
+        workers.forEach(Thread::start);
+        try {
+            for (final Thread worker : workers) {
+                worker.join();
+            }
+        } catch (final InterruptedException e) {
+            workers.forEach(Thread::interrupt);
+            throw e;
+        }
+
+        final List<List<Integer>> result = new ArrayList<>();
+        for (final List<Integer> group : groups) {
+            final Map<Object, List<Integer>> parts = new LinkedHashMap<>();
+            for (final int index : group) {
+                if (keys[index] != null) {
+                    parts.computeIfAbsent(keys[index], k -> new ArrayList<>()).add(index);
+                }
+            }
+            parts.values().stream().filter(part -> part.size() > 1).forEach(result::add);
+        }
+        return result;
+    }
+}
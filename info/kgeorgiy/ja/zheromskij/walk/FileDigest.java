@@ -0,0 +1,159 @@
+package info.kgeorgiy.ja.zheromskij.walk;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+ * Hash function over the contents of a file.
+ * Instances are stateful and must not be shared between threads.
+ */
+interface FileDigest {
+    /**
+     * Returns the length of the digest in bytes.
+     */
+    int length();
+
+    void update(byte[] bytes, int offset, int length);
+
+    /**
+     * Feeds the remaining bytes of the buffer, leaving it at its limit.
+     */
+    void update(ByteBuffer buffer);
+
+    /**
+     * Returns the digest of the bytes fed since the last reset and resets.
+     */
+    byte[] digest();
+
+    void reset();
+
+    /**
+     * Returns the digest of the named algorithm: {@code CRC32}, {@code CRC32C}, {@code Adler32}
+     * or anything supported by {@link MessageDigest}.
+     * @throws NoSuchAlgorithmException if the algorithm isn't supported
+     */
+    static FileDigest of(final String algorithm) throws NoSuchAlgorithmException {
+        return switch (algorithm.toUpperCase(Locale.ROOT)) {
+            case "CRC32" -> of(new CRC32());
+            case "CRC32C" -> of(new CRC32C());
+            case "ADLER32" -> of(new Adler32());
+            default -> of(MessageDigest.getInstance(algorithm));
+        };
+    }
+
+    static FileDigest of(final MessageDigest md) {
+        return new FileDigest() {
+            @Override
+            public int length() {
+                return md.getDigestLength();
+            }
+
+            @Override
+            public void update(final byte[] bytes, final int offset, final int length) {
+                md.update(bytes, offset, length);
+            }
+
+            @Override
+            public void update(final ByteBuffer buffer) {
+                md.update(buffer);
+            }
+
+            @Override
+            public byte[] digest() {
+                return md.digest();
+            }
+
+            @Override
+            public void reset() {
+                md.reset();
+            }
+        };
+    }
+
+    /**
+     * Wraps a 32-bit checksum, its digest being the big-endian value.
+     */
+    static FileDigest of(final Checksum checksum) {
+        return new FileDigest() {
+            @Override
+            public int length() {
+                return Integer.BYTES;
+            }
+
+            @Override
+            public void update(final byte[] bytes, final int offset, final int length) {
+                checksum.update(bytes, offset, length);
+            }
+
+            @Override
+            public void update(final ByteBuffer buffer) {
+                checksum.update(buffer);
+            }
+
+            @Override
+            public byte[] digest() {
+                final byte[] digest = ByteBuffer.allocate(Integer.BYTES).putInt((int) checksum.getValue()).array();
+                checksum.reset();
+                return digest;
+            }
+
+            @Override
+            public void reset() {
+                checksum.reset();
+            }
+        };
+    }
+
+    /**
+     * Feeds the same bytes to all the digests, so that they are computed in a single pass.
+     * The digest is the concatenation of their digests.
+     */
+    static FileDigest all(final List<FileDigest> digests) {
+        if (digests.size() == 1) {
+            return digests.get(0);
+        }
+        final int length = digests.stream().mapToInt(FileDigest::length).sum();
+        return new FileDigest() {
+            @Override
+            public int length() {
+                return length;
+            }
+
+            @Override
+            public void update(final byte[] bytes, final int offset, final int length) {
+                for (final FileDigest digest : digests) {
+                    digest.update(bytes, offset, length);
+                }
+            }
+
+            @Override
+            public void update(final ByteBuffer buffer) {
+                final int position = buffer.position();
+                for (final FileDigest digest : digests) {
+                    digest.update(buffer.position(position));
+                }
+            }
+
+            @Override
+            public byte[] digest() {
+                final ByteBuffer result = ByteBuffer.allocate(length);
+                for (final FileDigest digest : digests) {
+                    result.put(digest.digest());
+                }
+                return result.array();
+            }
+
+            @Override
+            public void reset() {
+                digests.forEach(FileDigest::reset);
+            }
+        };
+    }
+}
@@ -0,0 +1,170 @@
+package info.kgeorgiy.ja.zheromskij.walk;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Persistent cache of file digests, keyed by absolute path, size, modification time and file key (inode).
+ * A file is considered unchanged while all of them match.
+ * <p>
+ * The cache file holds the magic number, the digest algorithms, the number of entries,
+ * the entries themselves and the CRC32 of all the preceding bytes.
+ * It is rewritten through a temporary file that is atomically moved over the old one,
+ * so after a crash either the old or the new version is left.
+ * Entries of the files not looked up in the current run are kept while the files exist,
+ * so runs over parts of a tree, like the duplicate search, don't drop the rest of it.
+ */
+class HashCache {
+    private static final int MAGIC = 0x574B4332;
+    // Files modified that recently may still change within the same timestamp, so they aren't cached
+    private static final long RACY_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final Path file;
+    private final String algorithm;
+    // Entries loaded from the file
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Entries of the files looked up in this run, overriding the loaded ones
+    private final Map<String, Entry> used = new ConcurrentHashMap<>();
+    private volatile boolean modified;
+
+    private record Entry(long size, long modified, String fileKey, byte[] digest) {
+        boolean matches(final BasicFileAttributes attrs) {
+            return size == attrs.size()
+                    && modified == attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+                    && fileKey.equals(HashCache.fileKey(attrs));
+        }
+    }
+
+    private HashCache(final Path file, final String algorithm) {
+        this.file = file;
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Loads the cache from the file. A missing file gives an empty cache,
+     * as does a damaged one or one written for other algorithms.
+     */
+    static HashCache load(final Path file, final String algorithm) {
+        final HashCache cache = new HashCache(file, algorithm);
+        final CRC32 crc = new CRC32();
+        try (final DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file)), crc))) {
+            if (in.readInt() != MAGIC || !algorithm.equals(in.readUTF())) {
+                return cache;
+            }
+            final Map<String, Entry> entries = new ConcurrentHashMap<>();
+            for (int count = in.readInt(); count > 0; count--) {
+                final String path = in.readUTF();
+                final long size = in.readLong();
+                final long modified = in.readLong();
+                final String fileKey = in.readUTF();
+                final byte[] digest = new byte[in.readUnsignedShort()];
+                in.readFully(digest);
+                entries.put(path, new Entry(size, modified, fileKey, digest));
+            }
+            final long checksum = crc.getValue();
+            if (in.readLong() != checksum) {
+                System.err.println("Hash cache " + file + " is damaged, ignoring it");
+                return cache;
+            }
+            cache.entries.putAll(entries);
+        } catch (final NoSuchFileException ignored) {
+
+        } catch (final IOException e) {
+            Walk.printError("Couldn't read hash cache %s", file.toString(), e);
+        }
+        return cache;
+    }
+
+    /**
+     * Returns the cached digest of the file, or {@code null} if the file has changed or isn't cached.
+     */
+    byte[] get(final Path path, final BasicFileAttributes attrs) {
+        final String key = key(path);
+        final Entry entry = entries.get(key);
+        if (entry == null || !entry.matches(attrs)) {
+            return null;
+        }
+        used.put(key, entry);
+        return entry.digest();
+    }
+
+    /**
+     * Remembers the digest of the file with the attributes it had before it was read.
+     */
+    void put(final Path path, final BasicFileAttributes attrs, final byte[] digest) {
+        final long modifiedTime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        if (System.currentTimeMillis() * 1_000_000 - modifiedTime < RACY_NANOS) {
+            return;
+        }
+        used.put(key(path), new Entry(attrs.size(), modifiedTime, fileKey(attrs), digest));
+        modified = true;
+    }
+
+    /**
+     * Atomically replaces the cache file with the entries used in this run and the loaded entries
+     * of the files that still exist, if they differ from the loaded ones.
+     */
+    void save() throws IOException {
+        final Map<String, Entry> snapshot = new HashMap<>(used);
+        boolean changed = modified;
+        for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (!snapshot.containsKey(entry.getKey())) {
+                if (Files.exists(Path.of(entry.getKey()))) {
+                    snapshot.put(entry.getKey(), entry.getValue());
+                } else {
+                    changed = true;
+                }
+            }
+        }
+        if (!changed) {
+            return;
+        }
+        final Path absolute = file.toAbsolutePath();
+        final Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            final CRC32 crc = new CRC32();
+            try (final FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                final DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel)), crc));
+                out.writeInt(MAGIC);
+                out.writeUTF(algorithm);
+                out.writeInt(snapshot.size());
+                for (final Map.Entry<String, Entry> entry : snapshot.entrySet()) {
+                    final Entry value = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(value.size());
+                    out.writeLong(value.modified());
+                    out.writeUTF(value.fileKey());
+                    out.writeShort(value.digest().length);
+                    out.write(value.digest());
+                }
+                out.writeLong(crc.getValue());
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temp, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static String key(final Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    private static String fileKey(final BasicFileAttributes attrs) {
+        return Objects.toString(attrs.fileKey(), "");
+    }
+}
@@ -0,0 +1,107 @@
+package info.kgeorgiy.ja.zheromskij.walk;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Hashes files on a pool of workers, each with its own {@link Walk} and digest.
+ * Lines are written in the order the files were submitted, so a producer may keep submitting
+ * files while it finds them, overlapping the search with hashing.
+ * <p>
+ * Memory use doesn't depend on the number of files: the producer blocks while the task queue is full,
+ * and the workers block while the lines after a slow file fill the reorder window.
+ */
+class ParallelWalk implements AutoCloseable {
+    private static final Task END = new Task(-1, null);
+    private static final int QUEUE_PER_THREAD = 16;
+    private static final int WINDOW_PER_THREAD = 64;
+
+    private final BlockingQueue<Task> tasks;
+    private final List<Thread> workers = new ArrayList<>();
+    private final ReorderBuffer<String> output;
+    private long submitted;
+
+    private record Task(long index, String fileName) {
+    }
+
+    ParallelWalk(
+            final int threads,
+            final Walk.Factory factory,
+            final Writer writer,
+            final String outputFileName
+    ) throws NoSuchAlgorithmException {
+        tasks = new ArrayBlockingQueue<>(threads * QUEUE_PER_THREAD);
+        output = new ReorderBuffer<>(threads * WINDOW_PER_THREAD, line -> {
+            try {
+                writer.write(line);
+            } catch (final IOException e) {
+                Walk.printError("Error while writing to file %s", outputFileName, e);
+            }
+        });
+        for (int i = 0; i < threads; i++) {
+            final Walk walk = factory.create();
+            workers.add(new Thread(() -> work(walk)));
+        }
+        workers.forEach(Thread::start);
+    }
+
+    private void work(final Walk walk) {
+        try {
+            while (true) {
+                final Task task = tasks.take();
+                if (task == END) {
+                    tasks.put(END);
+                    return;
+                }
+                output.put(task.index(), walk.hashLine(task.fileName()));
+            }
+        } catch (final InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queues the file for hashing, waiting while the queue is full.
+     */
+    void submit(final String fileName) throws InterruptedException {
+        tasks.put(new Task(submitted++, fileName));
+    }
+
+    /**
+     * Waits for all submitted files to be hashed and written.
+     * No files may be submitted afterwards.
+     */
+    void awaitCompletion() throws InterruptedException {
+        tasks.put(END);
+        for (final Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    /**
+     * Stops the workers, abandoning the files not hashed yet if {@link #awaitCompletion()} didn't finish.
+     */
+    @Override
+    public void close() {
+        workers.forEach(Thread::interrupt);
+        boolean interrupted = false;
+        for (final Thread worker : workers) {
+            while (true) {
+                try {
+                    worker.join();
+                    break;
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
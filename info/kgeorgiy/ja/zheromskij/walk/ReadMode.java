@@ -0,0 +1,30 @@
+package info.kgeorgiy.ja.zheromskij.walk;
+
+/**
+ * Way of reading file contents into the digest.
+ */
+public enum ReadMode {
+    /** Input stream with a small heap buffer. */
+    STREAM,
+    /** File channel with a large direct buffer. */
+    CHANNEL,
+    /** File mapped into memory region by region. */
+    MAPPED,
+    /** {@link #CHANNEL} for small files, {@link #MAPPED} for large ones. */
+    AUTO;
+
+    // Mapping costs a few system calls and page table updates, so it pays off only for large files
+    private static final long MAPPED_THRESHOLD = 1 << 23;
+
+    /**
+     * Returns the way to read a file of the given size.
+     * @param size file size in bytes
+     * @return {@link #STREAM}, {@link #CHANNEL} or {@link #MAPPED}
+     */
+    ReadMode choose(final long size) {
+        if (this != AUTO) {
+            return this;
+        }
+        return size < MAPPED_THRESHOLD ? CHANNEL : MAPPED;
+    }
+}
@@ -0,0 +1,10 @@
+package info.kgeorgiy.ja.zheromskij.walk;
+
+/**
+ * {@link Walk} hashing every file under the directories listed in the input.
+ */
+public class RecursiveWalk {
+    public static void main(final String[] args) {
+        Walk.run(args, true);
+    }
+}
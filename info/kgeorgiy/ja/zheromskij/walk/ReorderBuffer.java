@@ -0,0 +1,54 @@
+package info.kgeorgiy.ja.zheromskij.walk;
+
+import java.util.function.Consumer;
+
+/**
+ * Passes values produced out of order to the sink in the order of their indices.
+ * Holds at most {@code window} values: a value too far ahead of the next expected one waits for it.
+ * The sink is called under the lock of the buffer, so it needn't be thread-safe.
+ */
+public class ReorderBuffer<T> {
+    private final Object[] pending;
+    private final Consumer<? super T> sink;
+    private long next;
+
+    /**
+     * Creates a buffer passing the values to the sink.
+     * @param window maximum number of values held
+     * @param sink consumer of the values, in the order of their indices starting from {@code 0}
+     */
+    public ReorderBuffer(final int window, final Consumer<? super T> sink) {
+        this.pending = new Object[window];
+        this.sink = sink;
+    }
+
+    /**
+     * Adds the value, waiting while it is at least {@code window} ahead of the next expected one.
+     * The value of the next expected index never waits, so the buffer can't deadlock
+     * as long as every index is eventually put.
+     * @param index index of the value, every index is to be put exactly once
+     * @param value non-null value
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void put(final long index, final T value) throws InterruptedException {
+        while (index - next >= pending.length) {
+            wait();
+        }
+        pending[slot(index)] = value;
+        if (index != next) {
+            return;
+        }
+        while (pending[slot(next)] != null) {
+            @SuppressWarnings("unchecked")
+            final T ready = (T) pending[slot(next)];
+            pending[slot(next)] = null;
+            sink.accept(ready);
+            next++;
+        }
+        notifyAll();
+    }
+
+    private int slot(final long index) {
+        return (int) (index % pending.length);
+    }
+}
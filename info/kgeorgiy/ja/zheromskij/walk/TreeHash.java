@@ -0,0 +1,88 @@
+package info.kgeorgiy.ja.zheromskij.walk;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * Merkle tree hash of a file, with the leaves hashed in parallel.
+ * <p>
+ * The file is split into blocks of fixed size, an empty file being a single empty block.
+ * A leaf is the digest of {@code 0x00} followed by the block, a node is the digest of {@code 0x01}
+ * followed by the digests of its children. A range of {@code n > 1} blocks is split after
+ * the largest power of two below {@code n}, as in RFC 6962, so the result depends only on the contents
+ * and the block size.
+ */
+// Never serialized: the fields hold a channel and a lambda, and tasks live only inside a pool
+@SuppressWarnings("serial")
+class TreeHash extends RecursiveTask<byte[]> {
+    private static final byte[] LEAF = {0};
+    private static final byte[] NODE = {1};
+
+    private final FileChannel channel;
+    private final long size;
+    private final int blockSize;
+    private final Supplier<FileDigest> digests;
+    private final long from;
+    private final long to;
+
+    private TreeHash(
+            final FileChannel channel, final long size, final int blockSize, final Supplier<FileDigest> digests,
+            final long from, final long to
+    ) {
+        this.channel = channel;
+        this.size = size;
+        this.blockSize = blockSize;
+        this.digests = digests;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Returns the tree hash of the first {@code size} bytes of the file.
+     * @param digests creates a fresh digest for every node, as the nodes are hashed concurrently
+     */
+    static byte[] hash(
+            final FileChannel channel, final long size, final int blockSize, final Supplier<FileDigest> digests
+    ) throws IOException {
+        final long blocks = Math.max(1, (size + blockSize - 1) / blockSize);
+        try {
+            return ForkJoinPool.commonPool().invoke(new TreeHash(channel, size, blockSize, digests, 0, blocks));
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    protected byte[] compute() {
+        final FileDigest digest = digests.get();
+        if (to - from == 1) {
+            final long position = from * blockSize;
+            digest.update(LEAF, 0, 1);
+            try {
+                final MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(blockSize, size - position));
+                try {
+                    digest.update(block);
+                } catch (final InternalError e) {
+                    throw Walk.mappedFault(e);
+                }
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return digest.digest();
+        }
+        final long split = from + Long.highestOneBit(to - from - 1);
+        final TreeHash right = new TreeHash(channel, size, blockSize, digests, split, to);
+        right.fork();
+        final byte[] left = new TreeHash(channel, size, blockSize, digests, from, split).compute();
+        digest.update(NODE, 0, 1);
+        digest.update(left, 0, left.length);
+        final byte[] rightHash = right.join();
+        digest.update(rightHash, 0, rightHash.length);
+        return digest.digest();
+    }
+}
@@ -1,59 +1,209 @@
 package info.kgeorgiy.ja.zheromskij.walk;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
 
 
 public class Walk {
 
-    private final MessageDigest md;
-    private static final String CORRUPTED_HASH = "0000000000000000000000000000000000000000";
+    private final FileDigest md;
+    // Digest lengths of the algorithms, in order
+    private final int[] lengths;
+    private final byte[] corrupted;
+    // Reused for every output line, grown as needed
+    private char[] line = new char[256];
+    private final ReadMode readMode;
+    private final List<String> algorithms;
+    // Block size of the tree hash, 0 for plain digests
+    private final int treeBlock;
+    private final HashCache cache;
+    // Allocated on the first read through a channel
+    private ByteBuffer buffer;
+    private static final List<String> DEFAULT_ALGORITHMS = List.of("SHA-1");
+    private static final String USAGE = "Usage: java Walk [--threads <count>] [--recursive] "
+            + "[--io stream|channel|mapped|auto] [--cache <cache_file>] [--algorithms <name,...>] "
+            + "[--tree <block_size>] [--duplicates] <input_file>|- <output_file>";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final int OUTPUT_BUFFER = 1 << 16;
+    // Input file name reading the file names from the standard input
+    private static final String STDIN = "-";
+    private static final int STREAM_BUFFER = 512;
+    private static final int CHANNEL_BUFFER = 1 << 20;
+    private static final long MAP_REGION = 1 << 26;
+
     public Walk() throws NoSuchAlgorithmException {
-        md = MessageDigest.getInstance("SHA-1");
+        this(ReadMode.AUTO);
+    }
+
+    public Walk(final ReadMode readMode) throws NoSuchAlgorithmException {
+        this(readMode, DEFAULT_ALGORITHMS);
+    }
+
+    /**
+     * Creates a walk computing digests of all the algorithms from a single read of every file.
+     * @param readMode way of reading files
+     * @param algorithms names of {@link MessageDigest} algorithms, {@code CRC32}, {@code CRC32C} or {@code Adler32}
+     * @throws NoSuchAlgorithmException if any of the algorithms isn't supported
+     */
+    public Walk(final ReadMode readMode, final List<String> algorithms) throws NoSuchAlgorithmException {
+        this(readMode, algorithms, 0, null);
+    }
+
+    /**
+     * @param treeBlock block size of the {@link TreeHash tree hash} computed instead of plain digests,
+     *                  {@code 0} for plain digests
+     * @param cache digests of unchanged files, {@code null} to read every file
+     */
+    Walk(
+            final ReadMode readMode,
+            final List<String> algorithms,
+            final int treeBlock,
+            final HashCache cache
+    ) throws NoSuchAlgorithmException {
+        final List<FileDigest> digests = digests(algorithms);
+        md = FileDigest.all(digests);
+        lengths = digests.stream().mapToInt(FileDigest::length).toArray();
+        corrupted = new byte[md.length()];
+        this.readMode = readMode;
+        this.algorithms = algorithms;
+        this.treeBlock = treeBlock;
+        this.cache = cache;
     }
 
     public static void main(final String[] args) {
-        if (args == null || args.length < 2) {
-            System.out.println("Usage: java Walk <input_file> <output_file>");
+        run(args, false);
+    }
+
+    /**
+     * Runs the walk with the command line options, {@code --recursive} being implied if {@code recursive} is set.
+     */
+    static void run(final String[] args, final boolean recursive) {
+        if (args == null) {
+            System.out.println(USAGE);
             return;
         }
-        if (args[0] == null) {
+        int threads = 1;
+        boolean walkTrees = recursive;
+        ReadMode readMode = ReadMode.AUTO;
+        String cacheFileName = null;
+        List<String> algorithms = DEFAULT_ALGORITHMS;
+        int treeBlock = 0;
+        boolean duplicates = false;
+        int argIndex = 0;
+        while (argIndex < args.length && args[argIndex] != null && args[argIndex].startsWith("--")) {
+            final String value = argIndex + 1 < args.length ? args[argIndex + 1] : null;
+            switch (args[argIndex]) {
+                case "--threads" -> {
+                    threads = parsePositive(value);
+                    argIndex += 2;
+                }
+                case "--recursive" -> {
+                    walkTrees = true;
+                    argIndex++;
+                }
+                case "--io" -> {
+                    readMode = parseEnum(ReadMode.class, value);
+                    argIndex += 2;
+                }
+                case "--cache" -> {
+                    cacheFileName = value;
+                    argIndex += 2;
+                }
+                case "--algorithms" -> {
+                    algorithms = value == null ? null : List.of(value.split(","));
+                    argIndex += 2;
+                }
+                case "--tree" -> {
+                    treeBlock = parsePositive(value);
+                    argIndex += 2;
+                }
+                case "--duplicates" -> {
+                    duplicates = true;
+                    argIndex++;
+                }
+                default -> threads = -1;
+            }
+            if (threads < 1 || readMode == null || algorithms == null || treeBlock < 0 || argIndex > args.length) {
+                System.out.println(USAGE);
+                return;
+            }
+        }
+        if (args.length - argIndex < 2) {
+            System.out.println(USAGE);
+            return;
+        }
+        if (args[argIndex] == null) {
             System.err.println("First argument is null");
             return;
         } 
-        if (args[1] == null) {
+        if (args[argIndex + 1] == null) {
             System.err.println("Second argument is null");
             return;
         } 
-        final String inputFileName = args[0];
-        final String outputFileName = args[1];
+        final String inputFileName = args[argIndex];
+        final String outputFileName = args[argIndex + 1];
 
+        final HashCache cache;
+        try {
+            cache = cacheFileName == null ? null : HashCache.load(
+                    Path.of(cacheFileName),
+                    algorithms.stream().map(name -> name.toUpperCase(Locale.ROOT)).collect(Collectors.joining(","))
+                            + (treeBlock > 0 ? ";tree=" + treeBlock : "")
+            );
+        } catch (final InvalidPathException e) {
+            printError("Invalid path to the cache file: %s", cacheFileName, e);
+            return;
+        }
+        final ReadMode mode = readMode;
+        final List<String> names = algorithms;
+        final int block = treeBlock;
+        final Factory factory = () -> new Walk(mode, names, block, cache);
         try {
-            final Walk walk = new Walk();
+            final Walk walk = factory.create();
             // :NOTE: Кодировки
-            try (final BufferedReader reader = Files.newBufferedReader(Path.of(inputFileName))) {
-                try (final BufferedWriter writer = Files.newBufferedWriter(Path.of(outputFileName))) {
+            try (final BufferedReader reader = STDIN.equals(inputFileName)
+                    ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                    : Files.newBufferedReader(Path.of(inputFileName))) {
+                // Lines are small, so they are batched in a large buffer to write in few system calls
+                try (final BufferedWriter writer = new BufferedWriter(
+                        new OutputStreamWriter(Files.newOutputStream(Path.of(outputFileName)), StandardCharsets.UTF_8),
+                        OUTPUT_BUFFER
+                )) {
                     try {
-                        String fileName;
-                        while ((fileName = reader.readLine()) != null) {
-                            try {
-                                String hashSum;
-                                try {
-                                    hashSum = walk.getFileHashSum(fileName);
-                                } catch (WalkException e) {
-                                    hashSum = CORRUPTED_HASH;
-                                }
-                                writer.write(String.format("%s %s%n", hashSum, fileName));
-                            } catch (final IOException e) {
-                                printError("Error while writing to file %s", outputFileName, e);
+                        if (duplicates) {
+                            final DuplicateIndex index = new DuplicateIndex(threads, factory);
+                            feed(reader, walkTrees, index::add);
+                            index.write(writer, outputFileName);
+                        } else if (threads > 1 || walkTrees) {
+                            // Directories are enumerated on this thread while the workers hash
+                            try (final ParallelWalk pipeline = new ParallelWalk(threads, factory, writer, outputFileName)) {
+                                feed(reader, walkTrees, pipeline::submit);
+                                pipeline.awaitCompletion();
                             }
+                        } else {
+                            feed(reader, false, fileName -> walk.writeLine(writer, outputFileName, fileName));
                         }
                     } catch (final IOException e) {
                         printError("Error while reading from file %s", inputFileName, e);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        printError("Interrupted while hashing files from %s", inputFileName, e);
                     }
                     
                 } catch (final InvalidPathException e) {
@@ -73,28 +223,226 @@ public class Walk {
             }
 
         } catch (final NoSuchAlgorithmException e) {
-            printError("SHA-1 hashing isn't supported%s", "", e);
+            printError("Hashing algorithm isn't supported%s", "", e);
         }   
+        if (cache != null) {
+            try {
+                cache.save();
+            } catch (final IOException e) {
+                printError("Couldn't save hash cache %s", cacheFileName, e);
+            }
+        }
     }
 
-    
-    private static void printError(String format, String arg, Exception e) {
+    private static int parsePositive(final String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static <E extends Enum<E>> E parseEnum(final Class<E> type, final String value) {
+        try {
+            return value == null ? null : Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+        } catch (final IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates identically configured instances, one for every hashing thread.
+     */
+    @FunctionalInterface
+    interface Factory {
+        Walk create() throws NoSuchAlgorithmException;
+    }
+
+    @FunctionalInterface
+    interface FileSink {
+        void accept(String fileName) throws InterruptedException;
+    }
+
+    private static void feed(
+            final BufferedReader reader,
+            final boolean recursive,
+            final FileSink sink
+    ) throws IOException, InterruptedException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (recursive) {
+                walkTree(line, sink);
+            } else {
+                sink.accept(line);
+            }
+        }
+    }
+
+    /**
+     * Passes every file under {@code root} to the sink as soon as it is found.
+     * Paths that can't be visited are passed as well, to be reported with zero hash.
+     */
+    private static void walkTree(final String root, final FileSink sink) throws InterruptedException {
+        final Path start;
+        try {
+            start = Path.of(root);
+        } catch (final InvalidPathException e) {
+            sink.accept(root);
+            return;
+        }
+        try {
+            Files.walkFileTree(start, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                    return pass(file);
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+                    return pass(file);
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(final Path dir, final IOException exc) {
+                    if (exc != null) {
+                        printError("Error while listing directory %s", dir.toString(), exc);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                private FileVisitResult pass(final Path file) {
+                    try {
+                        sink.accept(file.toString());
+                        return FileVisitResult.CONTINUE;
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return FileVisitResult.TERMINATE;
+                    }
+                }
+            });
+        } catch (final IOException e) {
+            printError("Error while walking %s", root, e);
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    private void writeLine(final Writer writer, final String outputFileName, final String fileName) {
+        final int length = fillLine(fileName);
+        try {
+            writer.write(line, 0, length);
+        } catch (final IOException e) {
+            printError("Error while writing to file %s", outputFileName, e);
+        }
+    }
+
+    static void printError(String format, String arg, Throwable e) {
         System.err.println(String.format(format + "%n%s", arg, e.getMessage()));
     }
 
-    private String getFileHashSum(final String fileName) throws WalkException {
-        return bytesToHexString(getDigest(fileName));
+    /**
+     * Returns the output line for the file: the space-separated hex digests, or zeros if it couldn't be read,
+     * and the file name.
+     * Uses the digest of this instance, so every thread needs its own {@code Walk}.
+     */
+    String hashLine(final String fileName) {
+        final int length = fillLine(fileName);
+        return new String(line, 0, length);
+    }
+
+    /**
+     * Puts the output line for the file to the line buffer.
+     * @return line length
+     */
+    private int fillLine(final String fileName) {
+        final byte[] digest = digest(fileName);
+        return fillLine(digest == null ? corrupted : digest, fileName);
+    }
+
+    /**
+     * Returns the output line for the digest of the file.
+     */
+    String formatLine(final byte[] digest, final String fileName) {
+        final int length = fillLine(digest, fileName);
+        return new String(line, 0, length);
+    }
+
+    private int fillLine(final byte[] digest, final String fileName) {
+        final int length = digest.length * 2 + lengths.length + fileName.length() + LINE_SEPARATOR.length();
+        if (line.length < length) {
+            line = new char[Math.max(length, line.length * 2)];
+        }
+        int end = encodeHex(digest, line);
+        line[end++] = ' ';
+        fileName.getChars(0, fileName.length(), line, end);
+        end += fileName.length();
+        LINE_SEPARATOR.getChars(0, LINE_SEPARATOR.length(), line, end);
+        return end + LINE_SEPARATOR.length();
+    }
+
+    /**
+     * Returns the digest of the file, or {@code null} if it couldn't be read.
+     */
+    byte[] digest(final String fileName) {
+        try {
+            return cache == null ? getDigest(fileName) : getCachedDigest(fileName);
+        } catch (final WalkException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the plain digest of the first {@code length} bytes of the file, or {@code null} if it couldn't be read.
+     */
+    byte[] prefixDigest(final String fileName, final int length) {
+        try (final FileChannel channel = FileChannel.open(Path.of(fileName))) {
+            final ByteBuffer prefix = ByteBuffer.allocate(length);
+            while (prefix.hasRemaining() && channel.read(prefix) >= 0) {
+                // Reading until the prefix is full or the file ends
+            }
+            md.reset();
+            md.update(prefix.flip());
+            return md.digest();
+        } catch (final InvalidPathException | IOException e) {
+            printError("Error while reading from file %s", fileName, e);
+            return null;
+        }
+    }
+
+    private byte[] getCachedDigest(final String fileName) throws WalkException {
+        final Path path;
+        final BasicFileAttributes attrs;
+        try {
+            path = Path.of(fileName);
+            attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (final InvalidPathException | IOException e) {
+            // Let the read report the error
+            return getDigest(fileName);
+        }
+        final byte[] cached = cache.get(path, attrs);
+        if (cached != null) {
+            return cached;
+        }
+        // Attributes are taken before the read, so a file changed meanwhile is hashed again next time
+        final byte[] digest = getDigest(fileName);
+        cache.put(path, attrs, digest);
+        return digest;
     }
 
     private byte[] getDigest(final String fileName) throws WalkException {
-        try (final InputStream in = Files.newInputStream(Path.of(fileName))) {
-            final byte[] bytes = new byte[512];
+        try (final FileChannel channel = FileChannel.open(Path.of(fileName))) {
             try {
                 // :NOTE: Переиспользовать
                 md.reset();
-                int read;
-                while ((read = in.read(bytes)) >= 0) {
-                    md.update(bytes, 0, read);
+                final long size = channel.size();
+                if (treeBlock > 0) {
+                    return TreeHash.hash(channel, size, treeBlock, this::newDigest);
+                }
+                switch (readMode.choose(size)) {
+                    case STREAM -> readStream(channel);
+                    case CHANNEL -> readChannel(channel);
+                    default -> readMapped(channel, size);
                 }
                 return md.digest();
             } catch (final IOException e) {
@@ -115,12 +463,79 @@ public class Walk {
         // return new byte[20];
     }
 
+    private static List<FileDigest> digests(final List<String> algorithms) throws NoSuchAlgorithmException {
+        final List<FileDigest> digests = new ArrayList<>();
+        for (final String algorithm : algorithms) {
+            digests.add(FileDigest.of(algorithm));
+        }
+        return digests;
+    }
+
+    private FileDigest newDigest() {
+        try {
+            return FileDigest.all(digests(algorithms));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new AssertionError("Algorithms are checked in the constructor", e);
+        }
+    }
+
+    private void readStream(final FileChannel channel) throws IOException {
+        // Not closed: closing the stream would close the channel
+        final InputStream in = Channels.newInputStream(channel);
+        final byte[] bytes = new byte[STREAM_BUFFER];
+        int read;
+        while ((read = in.read(bytes)) >= 0) {
+            md.update(bytes, 0, read);
+        }
+    }
+
+    private void readChannel(final FileChannel channel) throws IOException {
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(CHANNEL_BUFFER);
+        }
+        while (channel.read(buffer.clear()) >= 0) {
+            md.update(buffer.flip());
+        }
+    }
+
+    /**
+     * Maps the file region by region, so that huge files don't exhaust the address space.
+     * The regions are unmapped when collected.
+     */
+    private void readMapped(final FileChannel channel, final long size) throws IOException {
+        for (long position = 0; position < size; position += MAP_REGION) {
+            final MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_REGION, size - position));
+            try {
+                md.update(region);
+            } catch (final InternalError e) {
+                throw mappedFault(e);
+            }
+        }
+    }
+
+    /**
+     * Access to a mapped region of a file truncated meanwhile faults with an {@link InternalError}.
+     */
+    static IOException mappedFault(final InternalError e) {
+        return new IOException("File changed while mapped", e);
+    }
 
-    private String bytesToHexString(final byte[] bytes) {
-        final StringBuilder sb = new StringBuilder();
-        for (final byte b : bytes) {
-            sb.append(String.format("%02x", b));
+    /**
+     * Writes the digests of the algorithms in hex, separated by spaces, to the start of the buffer.
+     * @return number of chars written
+     */
+    private int encodeHex(final byte[] bytes, final char[] out) {
+        int end = 0;
+        int index = 0;
+        for (final int length : lengths) {
+            if (end > 0) {
+                out[end++] = ' ';
+            }
+            for (final int stop = index + length; index < stop; index++) {
+                out[end++] = HEX_DIGITS[(bytes[index] >> 4) & 0xf];
+                out[end++] = HEX_DIGITS[bytes[index] & 0xf];
+            }
         }
-        return sb.toString();
+        return end;
     }
 }
@@ -0,0 +1,157 @@
+package info.kgeorgiy.ja.zheromskij.walk.bench;
+
+import info.kgeorgiy.ja.zheromskij.walk.ReadMode;
+import info.kgeorgiy.ja.zheromskij.walk.Walk;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Wall-clock benchmarks of {@link Walk} over generated files.
+ * Sweeps file size and {@link ReadMode}, prints a summary to {@code System.err} and the results as JSON.
+ * Files are read through the page cache, so the results show the cost of the read path rather than of the disk.
+ * <p>
+ * Usage: {@code java WalkBenchmark [output.json] [param=value,value...]...},
+ * where parameters are {@code sizes} (in bytes), {@code files} (total bytes per run), {@code modes},
+ * {@code threads}, {@code warmup} and {@code measure} (in milliseconds).
+ * Results are written to standard output if no output file is given.
+ */
+public class WalkBenchmark {
+    private static final int WRITE_BLOCK = 1 << 20;
+
+    public static void main(final String[] args) throws IOException {
+        final Map<String, String> params = new HashMap<>(Map.of(
+                "sizes", "1024,65536,1048576,67108864",
+                "files", "67108864",
+                "modes", Arrays.stream(ReadMode.values()).map(ReadMode::name).collect(Collectors.joining(",")),
+                "threads", "1",
+                "warmup", "500",
+                "measure", "2000"
+        ));
+        Path output = null;
+        for (final String arg : args) {
+            final int eq = arg.indexOf('=');
+            if (eq < 0) {
+                output = Path.of(arg);
+            } else if (params.containsKey(arg.substring(0, eq))) {
+                params.put(arg.substring(0, eq), arg.substring(eq + 1));
+            } else {
+                System.err.println("Unknown parameter " + arg);
+                return;
+            }
+        }
+
+        final Path root = Files.createTempDirectory(WalkBenchmark.class.getSimpleName());
+        final List<Result> results = new ArrayList<>();
+        try {
+            for (final long size : longs(params, "sizes")) {
+                final Path input = generate(root, size, Math.max(1, Long.parseLong(params.get("files")) / size));
+                for (final String threads : list(params, "threads")) {
+                    for (final String mode : list(params, "modes")) {
+                        final String[] walkArgs = {
+                                "--threads", threads, "--io", mode, input.toString(), root.resolve("output.txt").toString()
+                        };
+                        final Result result = measure(
+                                mode, Integer.parseInt(threads), size, () -> Walk.main(walkArgs),
+                                Long.parseLong(params.get("warmup")),
+                                Long.parseLong(params.get("measure"))
+                        );
+                        System.err.println(result);
+                        results.add(result);
+                    }
+                }
+            }
+        } finally {
+            try (var files = Files.walk(root)) {
+                for (final Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+
+        final String json = results.stream().map(Result::toJson).collect(Collectors.joining(",\n", "[\n", "\n]\n"));
+        if (output == null) {
+            System.out.print(json);
+        } else {
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(output, StandardCharsets.UTF_8))) {
+                writer.print(json);
+            }
+        }
+    }
+
+    /**
+     * Creates {@code count} random files of the given size and returns the input file listing them.
+     */
+    private static Path generate(final Path root, final long size, final long count) throws IOException {
+        final Random random = new Random(size);
+        final byte[] block = new byte[(int) Math.min(size, WRITE_BLOCK)];
+        final List<String> names = new ArrayList<>();
+        for (long i = 0; i < count; i++) {
+            final Path file = root.resolve(size + "-" + i);
+            try (OutputStream out = Files.newOutputStream(file)) {
+                for (long written = 0; written < size; written += block.length) {
+                    random.nextBytes(block);
+                    out.write(block, 0, (int) Math.min(block.length, size - written));
+                }
+            }
+            names.add(file.toString());
+        }
+        final Path input = root.resolve("input-" + size + ".txt");
+        Files.write(input, names, StandardCharsets.UTF_8);
+        return input;
+    }
+
+    private static Result measure(
+            final String mode, final int threads, final long size, final Runnable action,
+            final long warmupMillis, final long measureMillis
+    ) {
+        final long warmupEnd = System.nanoTime() + warmupMillis * 1_000_000;
+        while (System.nanoTime() < warmupEnd) {
+            action.run();
+        }
+        final List<Long> samples = new ArrayList<>();
+        final long measureEnd = System.nanoTime() + measureMillis * 1_000_000;
+        do {
+            final long start = System.nanoTime();
+            action.run();
+            samples.add(System.nanoTime() - start);
+        } while (System.nanoTime() < measureEnd);
+
+        final double mean = samples.stream().mapToLong(Long::longValue).average().orElseThrow() / 1e6;
+        final double variance = samples.stream().mapToDouble(sample -> Math.pow(sample / 1e6 - mean, 2)).sum()
+                / Math.max(1, samples.size() - 1);
+        return new Result(mode, threads, size, samples.size(), mean, Math.sqrt(variance));
+    }
+
+    private static List<String> list(final Map<String, String> params, final String name) {
+        return List.of(params.get(name).split(","));
+    }
+
+    private static List<Long> longs(final Map<String, String> params, final String name) {
+        return list(params, name).stream().map(Long::parseLong).toList();
+    }
+
+    /**
+     * Mean and standard deviation of the time of a single run, in milliseconds.
+     */
+    private record Result(String mode, int threads, long size, int samples, double mean, double deviation) {
+        String toJson() {
+            return String.format(Locale.ROOT,
+                    "  {\"benchmark\": \"walk\", \"params\": {\"mode\": \"%s\", \"threads\": %d, \"size\": %d}, "
+                            + "\"mode\": \"avgt\", \"unit\": \"ms/op\", \"samples\": %d, \"score\": %.3f, \"scoreDeviation\": %.3f}",
+                    mode, threads, size, samples, mean, deviation);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-8s threads=%-3d size=%-10d %12.2f +- %.2f ms/op",
+                    mode, threads, size, mean, deviation);
+        }
+    }
+}
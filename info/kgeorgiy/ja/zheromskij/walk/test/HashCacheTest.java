@@ -0,0 +1,107 @@
+package info.kgeorgiy.ja.zheromskij.walk.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import info.kgeorgiy.ja.zheromskij.walk.Walk;
+
+public class HashCacheTest {
+    private static final String OLD = "old contents";
+    private static final String NEW = "new contents";
+    // Recently modified files aren't cached
+    private static final FileTime MODIFIED = FileTime.from(System.currentTimeMillis() - 3_600_000, TimeUnit.MILLISECONDS);
+
+    @TempDir
+    Path dir;
+    private Path file;
+    private Path other;
+    private Path cache;
+
+    @BeforeEach
+    void createFiles() throws IOException {
+        file = write(dir.resolve("file"), OLD);
+        other = write(dir.resolve("other"), "other contents");
+        cache = dir.resolve("cache.bin");
+    }
+
+    private static Path write(final Path path, final String contents) throws IOException {
+        Files.writeString(path, contents);
+        Files.setLastModifiedTime(path, MODIFIED);
+        return path;
+    }
+
+    private List<String> walk(final String... options) throws IOException {
+        return walk(List.of(file, other), options);
+    }
+
+    private List<String> walk(final List<Path> files, final String... options) throws IOException {
+        final Path input = Files.write(dir.resolve("input.txt"), files.stream().map(Path::toString).toList());
+        final Path output = dir.resolve("output.txt");
+        Walk.main(Stream.concat(Stream.of(options), Stream.of("--cache", cache.toString(), input.toString(), output.toString()))
+                .toArray(String[]::new));
+        return Files.readAllLines(output);
+    }
+
+    private static String line(final String algorithm, final String contents, final Path path) throws NoSuchAlgorithmException {
+        final byte[] digest = MessageDigest.getInstance(algorithm).digest(contents.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest) + " " + path;
+    }
+
+    // Same size and modification time in place, so only the cache can tell the old digest
+    private void rewriteInPlace() throws IOException {
+        write(file, NEW);
+    }
+
+    @Test
+    void roundTripTest() throws IOException, NoSuchAlgorithmException {
+        assertEquals(line("SHA-1", OLD, file), walk().get(0));
+        assertTrue(Files.exists(cache));
+        rewriteInPlace();
+        assertEquals(line("SHA-1", OLD, file), walk().get(0), "Cached digest wasn't used");
+
+        write(file, NEW + NEW);
+        assertEquals(line("SHA-1", NEW + NEW, file), walk().get(0), "Changed file wasn't hashed again");
+    }
+
+    @Test
+    void corruptedChecksumTest() throws IOException, NoSuchAlgorithmException {
+        walk();
+        final byte[] bytes = Files.readAllBytes(cache);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(cache, bytes);
+        rewriteInPlace();
+        assertEquals(line("SHA-1", NEW, file), walk().get(0), "Damaged cache was used");
+    }
+
+    @Test
+    void otherAlgorithmTest() throws IOException, NoSuchAlgorithmException {
+        walk();
+        rewriteInPlace();
+        assertEquals(line("SHA-256", NEW, file), walk("--algorithms", "SHA-256").get(0), "Cache of other algorithm was used");
+    }
+
+    @Test
+    void unusedEntriesTest() throws IOException, NoSuchAlgorithmException {
+        walk();
+        // Only the file is looked up here, the entry of the other one is kept
+        walk(List.of(file));
+        write(other, "OTHER contents");
+        assertEquals(line("SHA-1", "other contents", other), walk().get(1), "Entry of a file not looked up was dropped");
+    }
+}
@@ -0,0 +1,101 @@
+package info.kgeorgiy.ja.zheromskij.walk.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.Test;
+
+import info.kgeorgiy.ja.zheromskij.walk.ReorderBuffer;
+
+public class ReorderBufferTest {
+    private static final int PRODUCERS = 4;
+    private static final int VALUES = 2000;
+    private static final long BLOCK_WAIT_MILLIS = 100;
+
+    @Test
+    void orderingTest() throws InterruptedException {
+        for (final int window : List.of(1, 4, VALUES)) {
+            final List<Long> received = new ArrayList<>();
+            final ReorderBuffer<Long> buffer = new ReorderBuffer<>(window, received::add);
+            // Indices are taken in order but put out of order, like the hashing workers do
+            final AtomicLong next = new AtomicLong();
+            final List<Thread> producers = IntStream.range(0, PRODUCERS).mapToObj(i -> new Thread(() -> {
+                try {
+                    for (long index = next.getAndIncrement(); index < VALUES; index = next.getAndIncrement()) {
+                        if (ThreadLocalRandom.current().nextInt(8) == 0) {
+                            Thread.sleep(1);
+                        }
+                        buffer.put(index, index);
+                    }
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            })).toList();
+            producers.forEach(Thread::start);
+            for (final Thread producer : producers) {
+                producer.join();
+            }
+            synchronized (buffer) {
+                assertEquals(LongStream.range(0, VALUES).boxed().toList(), received, "window " + window);
+            }
+        }
+    }
+
+    @Test
+    void windowBlockingTest() throws InterruptedException {
+        final List<Integer> received = new ArrayList<>();
+        final ReorderBuffer<Integer> buffer = new ReorderBuffer<>(4, received::add);
+        final AtomicBoolean put = new AtomicBoolean();
+        final Thread ahead = new Thread(() -> {
+            try {
+                buffer.put(4, 4);
+                put.set(true);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        ahead.start();
+        ahead.join(BLOCK_WAIT_MILLIS);
+        assertTrue(ahead.isAlive(), "Value beyond the window wasn't held back");
+        assertTrue(received.isEmpty());
+
+        buffer.put(3, 3);
+        buffer.put(1, 1);
+        synchronized (buffer) {
+            assertTrue(received.isEmpty(), "Values were passed before the first one");
+        }
+        buffer.put(0, 0);
+        buffer.put(2, 2);
+        ahead.join();
+        assertTrue(put.get());
+        synchronized (buffer) {
+            assertEquals(List.of(0, 1, 2, 3, 4), received);
+        }
+    }
+
+    @Test
+    void interruptTest() throws InterruptedException {
+        final ReorderBuffer<Integer> buffer = new ReorderBuffer<>(1, value -> {});
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        final Thread ahead = new Thread(() -> {
+            try {
+                buffer.put(1, 1);
+            } catch (final InterruptedException e) {
+                interrupted.set(true);
+            }
+        });
+        ahead.start();
+        ahead.join(BLOCK_WAIT_MILLIS);
+        ahead.interrupt();
+        ahead.join();
+        assertTrue(interrupted.get());
+    }
+}
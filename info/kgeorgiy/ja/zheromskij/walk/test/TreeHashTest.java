@@ -0,0 +1,91 @@
+package info.kgeorgiy.ja.zheromskij.walk.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import info.kgeorgiy.ja.zheromskij.walk.Walk;
+
+public class TreeHashTest {
+    private static final String ALGORITHM = "SHA-256";
+    private static final int BLOCK = 1024;
+    private static final List<Integer> SIZES = List.of(
+            0, 1, BLOCK - 1, BLOCK, BLOCK + 1, 2 * BLOCK, 3 * BLOCK, 5 * BLOCK + 3, 64 * BLOCK, 100 * BLOCK + 17
+    );
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Straightforward RFC 6962 tree hash of the blocks of the data.
+     */
+    private static byte[] reference(final byte[] data, final int from, final int to) throws NoSuchAlgorithmException {
+        final MessageDigest md = MessageDigest.getInstance(ALGORITHM);
+        if (to - from <= 1) {
+            md.update((byte) 0);
+            md.update(data, from * BLOCK, Math.min(BLOCK, data.length - from * BLOCK));
+            return md.digest();
+        }
+        int split = 1;
+        while (split * 2 < to - from) {
+            split *= 2;
+        }
+        md.update((byte) 1);
+        md.update(reference(data, from, from + split));
+        md.update(reference(data, from + split, to));
+        return md.digest();
+    }
+
+    private static String reference(final byte[] data) throws NoSuchAlgorithmException {
+        return HexFormat.of().formatHex(reference(data, 0, Math.max(1, (data.length + BLOCK - 1) / BLOCK)));
+    }
+
+    private List<String> walk(final List<Path> files, final String... options) throws IOException {
+        final Path input = Files.write(dir.resolve("input.txt"), files.stream().map(Path::toString).toList());
+        final Path output = dir.resolve("output.txt");
+        Walk.main(Stream.concat(
+                Stream.of(options),
+                Stream.of("--algorithms", ALGORITHM, "--tree", Integer.toString(BLOCK), input.toString(), output.toString())
+        ).toArray(String[]::new));
+        return Files.readAllLines(output);
+    }
+
+    @Test
+    void referenceTest() throws IOException, NoSuchAlgorithmException {
+        final Random random = new Random(6962);
+        final List<Path> files = new ArrayList<>();
+        final List<String> expected = new ArrayList<>();
+        for (final int size : SIZES) {
+            final byte[] data = new byte[size];
+            random.nextBytes(data);
+            final Path file = Files.write(dir.resolve("file" + size), data);
+            files.add(file);
+            expected.add(reference(data) + " " + file);
+        }
+        assertEquals(expected, walk(files));
+        assertEquals(expected, walk(files, "--threads", "3"));
+    }
+
+    @Test
+    void singleBlockTest() throws IOException, NoSuchAlgorithmException {
+        final byte[] data = new byte[BLOCK];
+        new Random(6962).nextBytes(data);
+        final Path file = Files.write(dir.resolve("file"), data);
+        // A single block differs from the plain digest by the leaf prefix
+        final String plain = HexFormat.of().formatHex(MessageDigest.getInstance(ALGORITHM).digest(data));
+        assertNotEquals(plain + " " + file, walk(List.of(file)).get(0));
+    }
+}